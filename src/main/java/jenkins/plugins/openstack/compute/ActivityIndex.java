@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import hudson.slaves.CloudProvisioningListener;
+import hudson.slaves.NodeProvisioner;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.jenkinsci.plugins.cloudstats.TrackedItem;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provisioning activities indexed by fingerprint and node name.
+ *
+ * Maintained as the provisioning progresses so lookups do not iterate all the activities. Phases are read from the
+ * activities themselves so they are always current. Completed activities are eventually rotated out of
+ * {@link CloudStatistics}, so their presence is verified when looked up and the rest is pruned on reconciliation.
+ *
+ * Ordered after the listener of {@link CloudStatistics} so the activities exist when notified.
+ */
+@Extension(ordinal = -100) @Restricted(NoExternalUse.class)
+public final class ActivityIndex extends CloudProvisioningListener {
+    private final @Nonnull Map<Integer, ProvisioningActivity> byFingerprint = new ConcurrentHashMap<>();
+    private final @Nonnull Map<String, ProvisioningActivity> byNodeName = new ConcurrentHashMap<>();
+    private volatile boolean seeded;
+
+    /*package*/ static @Nonnull ActivityIndex get() {
+        return ExtensionList.lookup(CloudProvisioningListener.class).get(ActivityIndex.class);
+    }
+
+    @Override
+    public void onStarted(Cloud cloud, Label label, Collection<NodeProvisioner.PlannedNode> plannedNodes) {
+        for (NodeProvisioner.PlannedNode plannedNode : plannedNodes) {
+            if (plannedNode instanceof TrackedItem) {
+                track(((TrackedItem) plannedNode).getId());
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(NodeProvisioner.PlannedNode plannedNode, Node node) {
+        if (plannedNode instanceof TrackedItem) {
+            track(((TrackedItem) plannedNode).getId(), node);
+        }
+    }
+
+    @Override
+    public void onFailure(NodeProvisioner.PlannedNode plannedNode, Throwable t) {
+        if (plannedNode instanceof TrackedItem) {
+            track(((TrackedItem) plannedNode).getId());
+        }
+    }
+
+    /**
+     * Index activity, including those started outside of {@link NodeProvisioner}.
+     */
+    /*package*/ void track(@Nonnull ProvisioningActivity.Id id) {
+        ProvisioningActivity activity = byFingerprint.get(id.getFingerprint());
+        if (activity == null) {
+            activity = CloudStatistics.get().getActivityFor(id);
+            if (activity != null) {
+                add(activity);
+            }
+        }
+    }
+
+    /**
+     * Index activity under the name of the node provisioned.
+     */
+    /*package*/ void track(@Nonnull ProvisioningActivity.Id id, @Nonnull Node node) {
+        track(id);
+        ProvisioningActivity activity = byFingerprint.get(id.getFingerprint());
+        if (activity != null) {
+            byNodeName.put(node.getNodeName(), activity);
+        }
+    }
+
+    /*package*/ @CheckForNull ProvisioningActivity get(int fingerprint) {
+        seed();
+        ProvisioningActivity activity = byFingerprint.get(fingerprint);
+        return activity != null && isPresent(activity) ? activity : null;
+    }
+
+    /*package*/ boolean hasNodeName(@Nonnull String nodeName) {
+        seed();
+        ProvisioningActivity activity = byNodeName.get(nodeName);
+        return activity != null && isPresent(activity);
+    }
+
+    /**
+     * Forget activities rotated out of {@link CloudStatistics}.
+     */
+    /*package*/ void prune() {
+        if (!seeded) return; // Nothing indexed to prune
+
+        Set<ProvisioningActivity> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(CloudStatistics.get().getActivities());
+        byFingerprint.values().retainAll(present);
+        byNodeName.values().retainAll(present);
+    }
+
+    /**
+     * Index activities that existed before this was notified of any, like those loaded on startup.
+     */
+    private void seed() {
+        if (seeded) return;
+
+        synchronized (this) {
+            if (seeded) return;
+
+            for (ProvisioningActivity activity : CloudStatistics.get().getActivities()) {
+                add(activity);
+            }
+            seeded = true;
+        }
+    }
+
+    private void add(@Nonnull ProvisioningActivity activity) {
+        ProvisioningActivity.Id id = activity.getId();
+        byFingerprint.putIfAbsent(id.getFingerprint(), activity);
+        String nodeName = id.getNodeName();
+        if (nodeName != null) {
+            byNodeName.putIfAbsent(nodeName, activity);
+        }
+    }
+
+    /**
+     * Only completed activities are archived and thus can be rotated out.
+     */
+    private boolean isPresent(@Nonnull ProvisioningActivity activity) {
+        if (activity.getCurrentPhase() != ProvisioningActivity.Phase.COMPLETED) return true;
+        if (CloudStatistics.get().getActivityFor(activity.getId()) != null) return true;
+
+        byFingerprint.values().remove(activity);
+        byNodeName.values().remove(activity);
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rolling profile of how long it takes for servers of a template to get ready.
+ *
+ * The template is considered degraded when the p95 of the most recent samples regresses compared to the older ones,
+ * likely after an image or flavor change.
+ */
+@Restricted(NoExternalUse.class)
+public final class BootProfile {
+
+    /*package*/ static final int SAMPLES = 100;
+    /*package*/ static final int RECENT = 10;
+    /*package*/ static final double DEGRADATION_RATIO = Double.parseDouble(
+            System.getProperty(BootProfile.class.getName() + ".degradationRatio", "1.5")
+    );
+
+    public enum Stage {
+        BOOT("Boot to ACTIVE"),
+        LAUNCH("ACTIVE to online"),
+        TOTAL("Total provisioning");
+
+        private final @Nonnull String displayName;
+
+        Stage(@Nonnull String displayName) {
+            this.displayName = displayName;
+        }
+
+        public @Nonnull String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final @Nonnull Samples boot = new Samples();
+    private final @Nonnull Samples launch = new Samples();
+    private final @Nonnull Samples total = new Samples();
+
+    /*package*/ synchronized void record(@Nonnull Stage stage, long millis) {
+        samples(stage).record(millis);
+    }
+
+    /**
+     * @return Percentile duration in millis or null if nothing recorded.
+     */
+    public synchronized @CheckForNull Long getPercentile(@Nonnull Stage stage, int percent) {
+        long[] values = samples(stage).chronological();
+        if (values.length == 0) return null;
+        return percentile(values, percent);
+    }
+
+    public synchronized int getCount(@Nonnull Stage stage) {
+        return samples(stage).count;
+    }
+
+    /**
+     * p95 of the recent samples exceeds the older ones by {@link #DEGRADATION_RATIO}.
+     */
+    public synchronized boolean isDegraded(@Nonnull Stage stage) {
+        long[] values = samples(stage).chronological();
+        if (values.length < RECENT * 3) return false; // Not enough data to tell
+
+        long[] baseline = Arrays.copyOfRange(values, 0, values.length - RECENT);
+        long[] recent = Arrays.copyOfRange(values, values.length - RECENT, values.length);
+        return percentile(recent, 95) > percentile(baseline, 95) * DEGRADATION_RATIO;
+    }
+
+    public @Nonnull List<Stage> getDegradedStages() {
+        List<Stage> degraded = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            if (isDegraded(stage)) {
+                degraded.add(stage);
+            }
+        }
+        return degraded;
+    }
+
+    public boolean isDegraded() {
+        return !getDegradedStages().isEmpty();
+    }
+
+    private @Nonnull Samples samples(@Nonnull Stage stage) {
+        switch (stage) {
+            case BOOT: return boot;
+            case LAUNCH: return launch;
+            case TOTAL: return total;
+            default: throw new AssertionError(stage);
+        }
+    }
+
+    // Nearest-rank
+    private static long percentile(@Nonnull long[] values, int percent) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percent / 100D * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static final class Samples {
+        private final long[] values = new long[SAMPLES];
+        private int count;
+        private int next;
+
+        private void record(long millis) {
+            values[next] = millis;
+            next = (next + 1) % SAMPLES;
+            if (count < SAMPLES) count++;
+        }
+
+        private @Nonnull long[] chronological() {
+            long[] out = new long[count];
+            int start = count < SAMPLES ? 0 : next;
+            for (int i = 0; i < count; i++) {
+                out[i] = values[(start + i) % SAMPLES];
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.AdministrativeMonitor;
+import hudson.init.Terminator;
+import hudson.model.Saveable;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.PhaseExecution;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Boot profiles of all templates, persisted across restarts.
+ *
+ * Samples are persisted in batches at most once per {@link #SAVE_DELAY} not to rewrite the file for every one of them.
+ * Profiles of templates no longer configured are pruned on reconciliation.
+ */
+@Extension @Restricted(NoExternalUse.class)
+public final class BootProfiles implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(BootProfiles.class.getName());
+
+    /*package*/ static final long SAVE_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    // cloud/template -> profile
+    private final @Nonnull Map<String, BootProfile> profiles = new TreeMap<>();
+
+    private transient boolean saveScheduled; // Guarded by this
+
+    public static @Nonnull BootProfiles get() {
+        return ExtensionList.lookup(BootProfiles.class).get(0);
+    }
+
+    /**
+     * Load the profiles persisted.
+     */
+    public BootProfiles() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to load boot profiles, starting over", ex);
+                profiles.clear();
+            }
+        }
+    }
+
+    private static @Nonnull XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), BootProfiles.class.getName() + ".xml"));
+    }
+
+    public synchronized @Nonnull Map<String, BootProfile> getProfiles() {
+        return new TreeMap<>(profiles);
+    }
+
+    public synchronized @Nonnull BootProfile of(@Nonnull String cloud, @Nonnull String template) {
+        return profiles.computeIfAbsent(cloud + "/" + template, k -> new BootProfile());
+    }
+
+    /*package*/ void record(@Nonnull String cloud, @Nonnull String template, @Nonnull BootProfile.Stage stage, long millis) {
+        BootProfile profile = of(cloud, template);
+        boolean wasDegraded = profile.isDegraded(stage);
+        profile.record(stage, millis);
+        if (!wasDegraded && profile.isDegraded(stage)) {
+            LOGGER.warning(String.format(
+                    "%s time of template %s in cloud %s regressed: p95 is %d ms", stage.getDisplayName(), template, cloud, profile.getPercentile(stage, 95)
+            ));
+        }
+
+        scheduleSave();
+    }
+
+    private synchronized void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        Timer.get().schedule(this::persist, SAVE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private void persist() {
+        try {
+            save();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to persist boot profiles", ex);
+        }
+    }
+
+    /**
+     * Persist samples not saved yet.
+     */
+    @Terminator
+    public static void flush() {
+        BootProfiles profiles = get();
+        synchronized (profiles) {
+            if (!profiles.saveScheduled) return;
+        }
+        profiles.persist();
+    }
+
+    /**
+     * Forget profiles of templates that are not configured.
+     */
+    /*package*/ synchronized void prune(@Nonnull List<JCloudsCloud> clouds) {
+        Set<String> configured = new HashSet<>();
+        for (JCloudsCloud cloud : clouds) {
+            for (JCloudsSlaveTemplate template : cloud.getTemplates()) {
+                configured.add(cloud.name + "/" + template.getName());
+            }
+        }
+        if (profiles.keySet().retainAll(configured)) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Record the first connection of a computer.
+     */
+    /*package*/ void recordOnline(@Nonnull JCloudsSlave node) {
+        ProvisioningActivity.Id id = node.getId();
+        String template = id.getTemplateName();
+        if (template == null) return;
+
+        long now = System.currentTimeMillis();
+        record(id.getCloudName(), template, BootProfile.Stage.LAUNCH, now - node.getCreatedTime());
+
+        ProvisioningActivity activity = CloudStatistics.get().getPotentiallyCompletedActivityFor(id);
+        if (activity != null) {
+            PhaseExecution provisioning = activity.getPhaseExecution(ProvisioningActivity.Phase.PROVISIONING);
+            if (provisioning != null) {
+                record(id.getCloudName(), template, BootProfile.Stage.TOTAL, now - provisioning.getStarted().getTime());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        saveScheduled = false;
+        getConfigFile().write(this);
+    }
+
+    /**
+     * Report templates that got slow to provision.
+     */
+    @Extension
+    public static final class Monitor extends AdministrativeMonitor {
+        @Override
+        public boolean isActivated() {
+            for (BootProfile profile : BootProfiles.get().getProfiles().values()) {
+                if (profile.isDegraded()) return true;
+            }
+            return false;
+        }
+
+        public @Nonnull Map<String, BootProfile> getDegraded() {
+            Map<String, BootProfile> degraded = new TreeMap<>();
+            for (Map.Entry<String, BootProfile> e : BootProfiles.get().getProfiles().entrySet()) {
+                if (e.getValue().isDegraded()) {
+                    degraded.put(e.getKey(), e.getValue());
+                }
+            }
+            return degraded;
+        }
+
+        @Override
+        public @Nonnull String getDisplayName() {
+            return "OpenStack slow provisioning";
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Util;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stop provisioning from template and availability zone that keeps failing.
+ *
+ * After {@link #THRESHOLD} consecutive failures the circuit opens and the combination is not used for provisioning.
+ * Once the suspension expires, single probe attempt is permitted. Its success closes the circuit, its failure
+ * suspends the combination again for twice as long.
+ *
+ * Outcomes are accounted to the zone the server was booted in, which is the configured one or the one Nova picked
+ * for templates without availability zone. As the plugin can not steer such templates away from a failing zone, they
+ * are suspended only when failing in all the zones they were booted in recently, or before any server was booted. The
+ * probe of such template probes all its failing zones at once.
+ *
+ * The outcomes of the last {@link #WINDOW} attempts of the cloud are kept to tell its recent success rate.
+ */
+@Restricted(NoExternalUse.class)
+public final class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /*package*/ static final int THRESHOLD = Integer.getInteger(CircuitBreaker.class.getName() + ".threshold", 3);
+    /*package*/ static final long SUSPENSION = Long.getLong(CircuitBreaker.class.getName() + ".suspension", TimeUnit.MINUTES.toMillis(5));
+    private static final long MAX_SUSPENSION = TimeUnit.HOURS.toMillis(1);
+    /*package*/ static final int WINDOW = 20;
+
+    private final @Nonnull String cloud;
+    // Circuits of templates without zone configured are retained even when closed to know the healthy zones
+    private final @Nonnull Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    // Ring buffer of recent outcomes, true for failure
+    private final @Nonnull boolean[] outcomes = new boolean[WINDOW]; // Guarded by outcomes
+    private int recorded; // Guarded by outcomes
+    private int failed; // Guarded by outcomes
+    private int next; // Guarded by outcomes
+
+    /*package*/ CircuitBreaker(@Nonnull String cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Template can be planned for provisioning.
+     */
+    public boolean isAvailable(@Nonnull JCloudsSlaveTemplate template) {
+        String zone = configuredZone(template);
+        if (!zone.isEmpty()) return isAvailable(circuits.get(key(template, zone)));
+
+        if (!isAvailable(circuits.get(key(template, "")))) return false;
+        List<Circuit> zones = zonesOf(template);
+        return zones.isEmpty() || zones.stream().anyMatch(Circuit::isAvailable);
+    }
+
+    /**
+     * Claim the permission to provision from template.
+     *
+     * @return false if the circuit is open, or half-open with the probe already in progress.
+     */
+    public boolean attempt(@Nonnull JCloudsSlaveTemplate template) {
+        String zone = configuredZone(template);
+        if (!zone.isEmpty()) return attempt(circuits.get(key(template, zone)));
+
+        Circuit any = circuits.get(key(template, ""));
+        if (!isAvailable(any)) return false;
+
+        List<Circuit> zones = zonesOf(template);
+        if (!zones.isEmpty() && zones.stream().noneMatch(c -> c.getState() == State.CLOSED)) {
+            // Failing in all zones, Nova is free to pick any of them for the probe
+            boolean claimed = false;
+            for (Circuit circuit : zones) {
+                claimed |= circuit.attempt();
+            }
+            if (!claimed) return false;
+        }
+        return attempt(any);
+    }
+
+    public void success(@Nonnull JCloudsSlaveTemplate template) {
+        success(template, null);
+    }
+
+    /**
+     * @param landedZone Zone the server was booted in, null if not known.
+     */
+    public void success(@Nonnull JCloudsSlaveTemplate template, @CheckForNull String landedZone) {
+        record(false);
+        String zone = zone(template, landedZone);
+        Circuit circuit;
+        if (configuredZone(template).isEmpty()) {
+            releaseProbes(template);
+            Circuit any = circuits.remove(key(template, ""));
+            if (any != null && any.getState() != State.CLOSED) {
+                LOGGER.info("Provisioning from " + any.getName() + " recovered");
+            }
+            if (zone.isEmpty()) return;
+
+            // Retained as a zone known to work
+            circuit = circuits.computeIfAbsent(key(template, zone), k -> new Circuit(template.getName(), zone));
+        } else {
+            circuit = circuits.remove(key(template, zone));
+        }
+        if (circuit != null && circuit.succeed()) {
+            LOGGER.info("Provisioning from " + circuit.getName() + " recovered");
+        }
+    }
+
+    public void failure(@Nonnull JCloudsSlaveTemplate template) {
+        failure(template, null);
+    }
+
+    /**
+     * @param landedZone Zone the server was booted in, null if not known or not booted at all.
+     */
+    public void failure(@Nonnull JCloudsSlaveTemplate template, @CheckForNull String landedZone) {
+        record(true);
+        if (configuredZone(template).isEmpty()) {
+            releaseProbes(template);
+        }
+        String zone = zone(template, landedZone);
+        Circuit circuit = circuits.computeIfAbsent(key(template, zone), k -> new Circuit(template.getName(), zone));
+        if (circuit.fail()) {
+            LOGGER.warning(String.format(
+                    "Provisioning from %s failed %d times in a row, suspended until %s",
+                    circuit.getName(), circuit.getFailures(), circuit.getSuspendedUntil()
+            ));
+        }
+    }
+
+    /**
+     * Zone the server was booted in as reported by the provisioning failure, if any.
+     *
+     * Null when the server was not accepted by Nova at all.
+     */
+    /*package*/ static @CheckForNull String landedZone(@Nonnull Throwable failure) {
+        for (Throwable ex = failure; ex != null; ex = ex.getCause()) {
+            if (ex instanceof Openstack.ActionFailed && ((Openstack.ActionFailed) ex).getAvailabilityZone() != null) {
+                return ((Openstack.ActionFailed) ex).getAvailabilityZone();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Part of the recent provisioning attempts of the cloud that succeeded, 1 if there are none.
+     */
+    public double getSuccessRate() {
+        synchronized (outcomes) {
+            return recorded == 0 ? 1 : 1 - (double) failed / recorded;
+        }
+    }
+
+    private void record(boolean failure) {
+        synchronized (outcomes) {
+            if (recorded < WINDOW) {
+                recorded++;
+            } else if (outcomes[next]) {
+                failed--; // Overwriting the oldest one
+            }
+            outcomes[next] = failure;
+            if (failure) failed++;
+            next = (next + 1) % WINDOW;
+        }
+    }
+
+    /**
+     * Circuits not closed.
+     */
+    public @Nonnull List<Circuit> getTripped() {
+        List<Circuit> tripped = new ArrayList<>();
+        for (Circuit circuit : circuits.values()) {
+            if (circuit.getState() != State.CLOSED) {
+                tripped.add(circuit);
+            }
+        }
+        return tripped;
+    }
+
+    private static boolean isAvailable(@CheckForNull Circuit circuit) {
+        return circuit == null || circuit.isAvailable();
+    }
+
+    private static boolean attempt(@CheckForNull Circuit circuit) {
+        return circuit == null || circuit.attempt();
+    }
+
+    /**
+     * Circuits of zones the template without configured zone was booted in.
+     */
+    private @Nonnull List<Circuit> zonesOf(@Nonnull JCloudsSlaveTemplate template) {
+        List<Circuit> zones = new ArrayList<>();
+        for (Circuit circuit : circuits.values()) {
+            if (circuit.template.equals(template.getName()) && !circuit.zone.isEmpty()) {
+                zones.add(circuit);
+            }
+        }
+        return zones;
+    }
+
+    private void releaseProbes(@Nonnull JCloudsSlaveTemplate template) {
+        for (Circuit circuit : zonesOf(template)) {
+            circuit.release();
+        }
+    }
+
+    private static @Nonnull String key(@Nonnull JCloudsSlaveTemplate template, @Nonnull String zone) {
+        return template.getName() + "/" + zone;
+    }
+
+    private static @Nonnull String zone(@Nonnull JCloudsSlaveTemplate template, @CheckForNull String landedZone) {
+        String zone = configuredZone(template);
+        return zone.isEmpty() ? Util.fixNull(landedZone) : zone;
+    }
+
+    private static @Nonnull String configuredZone(@Nonnull JCloudsSlaveTemplate template) {
+        return Util.fixNull(template.getEffectiveSlaveOptions().getAvailabilityZone());
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public final class Circuit {
+        private final @Nonnull String template;
+        private final @Nonnull String zone;
+        private int failures; // Guarded by this
+        private long suspension; // Guarded by this
+        private long suspendedUntil; // Guarded by this
+        private boolean probing; // Guarded by this
+
+        private Circuit(@Nonnull String template, @Nonnull String zone) {
+            this.template = template;
+            this.zone = zone;
+        }
+
+        public @Nonnull String getTemplate() {
+            return template;
+        }
+
+        public @CheckForNull String getZone() {
+            return Util.fixEmpty(zone);
+        }
+
+        public @Nonnull String getName() {
+            return cloud + "/" + template + (zone.isEmpty() ? "" : " in " + zone);
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        public synchronized @Nonnull Date getSuspendedUntil() {
+            return new Date(suspendedUntil);
+        }
+
+        public synchronized @Nonnull State getState() {
+            if (failures < THRESHOLD) return State.CLOSED;
+            if (probing || System.currentTimeMillis() >= suspendedUntil) return State.HALF_OPEN;
+            return State.OPEN;
+        }
+
+        private synchronized boolean isAvailable() {
+            return getState() == State.CLOSED || (getState() == State.HALF_OPEN && !probing);
+        }
+
+        private synchronized boolean attempt() {
+            switch (getState()) {
+                case CLOSED: return true;
+                case OPEN: return false;
+                default:
+                    if (probing) return false;
+                    probing = true;
+                    return true;
+            }
+        }
+
+        /**
+         * @return true if the circuit was not closed.
+         */
+        private synchronized boolean succeed() {
+            boolean tripped = failures >= THRESHOLD;
+            failures = 0;
+            suspension = 0;
+            suspendedUntil = 0;
+            probing = false;
+            return tripped;
+        }
+
+        private synchronized void release() {
+            probing = false;
+        }
+
+        /**
+         * @return true if the circuit was opened.
+         */
+        private synchronized boolean fail() {
+            boolean probe = probing;
+            probing = false;
+            failures++;
+            if (failures < THRESHOLD) return false;
+            // Attempt started before the suspension
+            if (!probe && System.currentTimeMillis() < suspendedUntil) return false;
+
+            suspension = suspension == 0 ? SUSPENSION : Math.min(suspension * 2, MAX_SUSPENSION);
+            suspendedUntil = System.currentTimeMillis() + suspension;
+            return true;
+        }
+    }
+}
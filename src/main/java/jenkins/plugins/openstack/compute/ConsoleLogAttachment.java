@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tail of server console log, kept compressed.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleLogAttachment extends PhaseExecutionAttachment {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(ConsoleLogAttachment.class.getName());
+
+    /*package*/ static final int LINES = Integer.getInteger(ConsoleLogAttachment.class.getName() + ".lines", 1000);
+    /*package*/ static final int MAX_CHARS = Integer.getInteger(ConsoleLogAttachment.class.getName() + ".maxChars", 64 * 1024);
+
+    private final @Nonnull byte[] compressed;
+
+    /*package*/ ConsoleLogAttachment(@Nonnull String log) {
+        super(ProvisioningActivity.Status.OK, "Console log");
+        if (log.length() > MAX_CHARS) {
+            log = log.substring(log.length() - MAX_CHARS);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(log.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new AssertionError(ex); // In memory
+        }
+        compressed = out.toByteArray();
+    }
+
+    public @Nonnull String getText() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gz.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            throw new AssertionError(ex); // In memory
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Capture the console log of a server and attach it to the activity.
+     *
+     * Meant to run before the server is deleted, not to block the thread that detected the failure.
+     */
+    /*package*/ static final class Capture implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final @Nonnull String cloudName;
+        private final @Nonnull String serverId;
+        private final @Nonnull ProvisioningActivity.Id id;
+        private final @Nonnull ProvisioningActivity.Phase phase;
+
+        /*package*/ Capture(
+                @Nonnull String cloudName, @Nonnull String serverId,
+                @Nonnull ProvisioningActivity.Id id, @Nonnull ProvisioningActivity.Phase phase
+        ) {
+            this.cloudName = cloudName;
+            this.serverId = serverId;
+            this.id = id;
+            this.phase = phase;
+        }
+
+        /*package*/ void run() {
+            try {
+                CloudStatistics statistics = CloudStatistics.get();
+                ProvisioningActivity activity = statistics.getPotentiallyCompletedActivityFor(id);
+                if (activity == null) return;
+
+                @CheckForNull String log = JCloudsCloud.getByName(cloudName).getOpenstack().getConsoleOutput(serverId, LINES);
+                if (log == null || log.isEmpty()) return;
+
+                statistics.attach(activity, phase, new ConsoleLogAttachment(log));
+            } catch (Exception ex) {
+                LOGGER.log(Level.INFO, "Unable to capture console log of " + serverId, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import jenkins.model.Jenkins;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Last known inventory of all clouds, persisted across restarts.
+ *
+ * The snapshot is taken on every reconciliation of the cloud. After restart, it is served as a provisional state so
+ * provisioning does not need to wait for server, network and image listings. It is revalidated by the first
+ * reconciliation of the cloud, which {@link StartupReconciliation} performs right after startup.
+ */
+@Extension @Restricted(NoExternalUse.class)
+public final class InventorySnapshot implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(InventorySnapshot.class.getName());
+
+    // cloud -> inventory
+    private final @Nonnull Map<String, Inventory> clouds = new TreeMap<>();
+
+    // Some of the clouds are not revalidated yet, checked not to lock on every client lookup once all are
+    private transient volatile boolean provisional;
+
+    public static @Nonnull InventorySnapshot get() {
+        return ExtensionList.lookup(InventorySnapshot.class).get(0);
+    }
+
+    /**
+     * Load the snapshot persisted.
+     */
+    public InventorySnapshot() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to load inventory snapshot, starting over", ex);
+                clouds.clear();
+            }
+        }
+        provisional = !clouds.isEmpty(); // Loaded inventories are not validated
+    }
+
+    /*package for testing*/ static @Nonnull InventorySnapshot load() {
+        return new InventorySnapshot();
+    }
+
+    private static @Nonnull XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), InventorySnapshot.class.getName() + ".xml"));
+    }
+
+    /**
+     * Servers of the cloud from the snapshot, null if not available or revalidated already.
+     */
+    public @CheckForNull List<ServerInfo> getProvisionalServers(@Nonnull String cloud) {
+        if (!provisional) return null;
+
+        synchronized (this) {
+            Inventory inventory = getProvisional(cloud);
+            return inventory == null ? null : new ArrayList<>(inventory.servers);
+        }
+    }
+
+    /**
+     * Network IDs the declaration resolved to, null if not available or revalidated already.
+     */
+    public @CheckForNull List<String> getProvisionalNetworks(@Nonnull String cloud, @Nonnull String spec) {
+        if (!provisional) return null;
+
+        synchronized (this) {
+            Inventory inventory = getProvisional(cloud);
+            return inventory == null ? null : inventory.networks.get(spec);
+        }
+    }
+
+    /**
+     * Let the client resolve boot source images from the snapshot until revalidated.
+     */
+    public void prime(@Nonnull String cloud, @Nonnull Openstack os) {
+        if (!provisional) return;
+
+        synchronized (this) {
+            Inventory inventory = getProvisional(cloud);
+            if (inventory != null) {
+                os.setProvisionalImageIds(inventory.images);
+            }
+        }
+    }
+
+    private @CheckForNull Inventory getProvisional(@Nonnull String cloud) {
+        Inventory inventory = clouds.get(cloud);
+        return inventory == null || inventory.validated ? null : inventory;
+    }
+
+    /**
+     * Remember network declaration resolved to IDs.
+     */
+    public synchronized void recordNetworks(@Nonnull String cloud, @Nonnull String spec, @Nonnull List<String> ids) {
+        inventory(cloud).networks.put(spec, new ArrayList<>(ids));
+    }
+
+    /**
+     * Replace the snapshot of the cloud by its current state.
+     *
+     * Resolutions loaded from the snapshot are resolved afresh the first time.
+     */
+    /*package*/ void record(@Nonnull JCloudsCloud cloud, @Nonnull Openstack os, @Nonnull List<ServerInfo> servers) {
+        List<String> networksToRevalidate = new ArrayList<>();
+        List<String> imagesToRevalidate = new ArrayList<>();
+        synchronized (this) {
+            Inventory inventory = inventory(cloud.name);
+            inventory.servers = new ArrayList<>(servers);
+            if (!inventory.validated) {
+                networksToRevalidate.addAll(inventory.networks.keySet());
+                imagesToRevalidate.addAll(inventory.images.keySet());
+                inventory.validated = true;
+            }
+        }
+        os.setProvisionalImageIds(new HashMap<>());
+
+        // Outside of the lock as it talks to OpenStack
+        Map<String, List<String>> networks = new HashMap<>();
+        for (String spec : networksToRevalidate) {
+            try {
+                networks.put(spec, JCloudsSlaveTemplate.selectNetworkIds(os, spec));
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.FINE, "Network declaration " + spec + " of cloud " + cloud.name + " no longer resolves", ex);
+            }
+        }
+        for (String image : imagesToRevalidate) {
+            try {
+                os.getImageIdsFor(image); // Remembered by the client
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.FINE, "Image " + image + " of cloud " + cloud.name + " no longer resolves", ex);
+            }
+        }
+
+        synchronized (this) {
+            Inventory inventory = inventory(cloud.name);
+            inventory.networks.keySet().removeAll(networksToRevalidate);
+            inventory.networks.putAll(networks);
+            inventory.images.keySet().removeAll(imagesToRevalidate);
+            inventory.images.putAll(os.getResolvedImageIds());
+
+            clouds.keySet().retainAll(cloudNames());
+            provisional = clouds.values().stream().anyMatch(i -> !i.validated);
+            try {
+                save();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to persist inventory snapshot", ex);
+            }
+        }
+    }
+
+    private @Nonnull Inventory inventory(@Nonnull String cloud) {
+        return clouds.computeIfAbsent(cloud, k -> new Inventory());
+    }
+
+    private static @Nonnull Collection<String> cloudNames() {
+        List<String> names = new ArrayList<>();
+        for (JCloudsCloud cloud : JCloudsCloud.getClouds()) {
+            names.add(cloud.name);
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        getConfigFile().write(this);
+    }
+
+    private static final class Inventory {
+        private @Nonnull List<ServerInfo> servers = new ArrayList<>();
+        // network declaration -> ids
+        private @Nonnull Map<String, List<String>> networks = new HashMap<>();
+        // image name or id -> ids
+        private @Nonnull Map<String, List<String>> images = new HashMap<>();
+        // Loaded from the snapshot when false
+        private transient boolean validated = true;
+
+        private Object readResolve() {
+            if (servers == null) servers = new ArrayList<>();
+            if (networks == null) networks = new HashMap<>();
+            if (images == null) images = new HashMap<>();
+            return this;
+        }
+    }
+}
@@ -26,7 +26,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nonnull;
 
 import jenkins.plugins.openstack.compute.internal.DestroyMachine;
-import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
 
 import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
 import org.kohsuke.accmod.Restricted;
@@ -94,7 +94,7 @@ public class JCloudsBuildWrapper extends BuildWrapper {
                         if (result != null) {
                             synchronized (cloudTemplateNodeBuilder) {
                                 // Builder in not threadsafe
-                                cloudTemplateNodeBuilder.add(new RunningNode(nodePlan.getCloud(), result));
+                                cloudTemplateNodeBuilder.add(new RunningNode(nodePlan.getCloud(), ServerInfo.of(result)));
                             }
                         } else {
                             failedLaunches.incrementAndGet();
@@ -147,7 +147,7 @@ public class JCloudsBuildWrapper extends BuildWrapper {
     private @Nonnull String getIpsString(final Iterable<RunningNode> runningNodes) {
         final List<String> ips = new ArrayList<>(instancesToRun.size());
         for (RunningNode node : runningNodes) {
-            String addr = Openstack.getAccessIpAddress(node.getNode());
+            String addr = node.getServerInfo().getAccessIp();
             if (addr != null) {
                 ips.add(addr);
             } else {
@@ -163,15 +163,15 @@ public class JCloudsBuildWrapper extends BuildWrapper {
     private static void terminateNodes(Iterable<RunningNode> runningNodes) {
         AsyncResourceDisposer disposer = AsyncResourceDisposer.get();
         for (RunningNode rn: runningNodes) {
-            disposer.dispose(new DestroyMachine(rn.getCloudName(), rn.getNode().getId()));
+            disposer.dispose(new DestroyMachine(rn.getCloudName(), rn.getServerInfo().getId()));
         }
     }
 
     public static class RunningNode {
         private final String cloud;
-        private final Server node;
+        private final ServerInfo node;
 
-        RunningNode(String cloud, Server node) {
+        RunningNode(String cloud, ServerInfo node) {
             this.cloud = cloud;
             this.node = node;
         }
@@ -180,7 +180,15 @@ public class JCloudsBuildWrapper extends BuildWrapper {
             return cloud;
         }
 
+        /**
+         * @deprecated Use {@link #getServerInfo()}. This fetches the current server state from OpenStack.
+         */
+        @Deprecated
         public Server getNode() {
+            return JCloudsCloud.getByName(cloud).getOpenstack().getServerById(node.getId());
+        }
+
+        public ServerInfo getServerInfo() {
             return node;
         }
     }
@@ -1,32 +1,33 @@
 package jenkins.plugins.openstack.compute;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
-import hudson.model.Executor;
-import hudson.model.Result;
+import hudson.Functions;
 import hudson.slaves.OfflineCause;
 import jenkins.model.CauseOfInterruption;
-import jenkins.plugins.openstack.compute.internal.DestroyMachine;
 import jenkins.plugins.openstack.compute.internal.Openstack;
-import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
+import jenkins.plugins.openstack.compute.slaveopts.BootSource;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import hudson.Extension;
 import hudson.model.AsyncPeriodicWork;
 import hudson.model.TaskListener;
-import org.openstack4j.api.exceptions.ClientResponseException;
-import org.openstack4j.api.exceptions.StatusCode;
 import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.storage.block.Volume;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -37,12 +38,35 @@ import javax.annotation.Nonnull;
  * - Node pending deletion get terminated with their servers.
  * - Servers that are running longer than declared are terminated.
  * - Nodes with server missing are terminated.
+ * - Leaked floating IPs are released.
+ * - Leaked volumes are deleted, for clouds with templates booting from volumes.
+ * - Enough slaves are pre-created, see {@link JCloudsPreCreationThread}.
+ *
+ * The work ticks every minute, but each cloud is reconciled on its own adaptive interval: it is reset to the minimum
+ * when the reconciliation found something to fix and doubled (up to {@link #MAX_INTERVAL}) when nothing was found.
+ * Server listing obtained by the cloud reconciliation is reused for pre-creation within the same tick.
+ *
+ * @see ReconciliationPlan
  */
 @Extension @Restricted(NoExternalUse.class)
 public final class JCloudsCleanupThread extends AsyncPeriodicWork {
     private static final Logger LOGGER = Logger.getLogger(JCloudsCleanupThread.class.getName());
 
+    /*package*/ static final long MIN_INTERVAL = MIN;
+    /*package*/ static final long MAX_INTERVAL = MIN * 16;
+
     private final @Nonnull ListMultimap<String, String> stillFips = ArrayListMultimap.create();
+    // Free FIPs the plugin is not permitted to release, guarded by stillFips
+    private final @Nonnull ListMultimap<String, String> preallocatedFips = ArrayListMultimap.create();
+    // Unattached volumes seen on previous reconciliation, guarded by stillFips
+    private final @Nonnull ListMultimap<String, String> stillVolumes = ArrayListMultimap.create();
+
+    /**
+     * Next reconciliation time and current interval per cloud name.
+     */
+    private final @Nonnull Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    private final @Nonnull Map<String, ReconciliationPlan> lastPlans = new ConcurrentHashMap<>();
 
     public JCloudsCleanupThread() {
         super("OpenStack slave cleanup");
@@ -50,55 +74,165 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
 
     @Override
     public long getRecurrencePeriod() {
-        return MIN * 10;
+        return MIN_INTERVAL;
     }
 
     @Override
     public void execute(TaskListener listener) {
-        try {
-            terminateNodesPendingDeletion();
-
-            @Nonnull HashMap<JCloudsCloud, List<Server>> runningServers = destroyServersOutOfScope();
+        tick(false);
+    }
 
-            terminatesNodesWithoutServers(runningServers);
+    /**
+     * Reconcile all clouds regardless of their schedule.
+     */
+    public void forceCleanup() {
+        tick(true);
+    }
 
-            cleanOrphanedFips();
-        } catch (JCloudsCloud.LoginFailure ex) {
-            LOGGER.log(Level.WARNING, "Unable to authenticate: " + ex.getMessage());
+    private void tick(boolean force) {
+        try {
+            terminateNodesPendingDeletion();
         } catch (Throwable ex) {
             LOGGER.log(Level.SEVERE, "Enable to perform the cleanup", ex);
         }
+
+        long now = System.currentTimeMillis();
+        for (JCloudsCloud cloud : JCloudsCloud.getClouds()) {
+            Schedule schedule = schedules.computeIfAbsent(cloud.name, n -> new Schedule());
+            try {
+                List<ServerInfo> servers = null;
+                // Skip the cloud being reconciled by someone else not to run two plans back to back
+                if (force ? schedule.lock() : schedule.tryLock(now)) {
+                    try {
+                        int drift = reconcile(cloud);
+                        schedule.reschedule(now, drift);
+                        servers = lastPlans.get(cloud.name).getInScope();
+                        if (drift > 0) {
+                            LOGGER.fine("Fixed " + drift + " problem(s) in cloud " + cloud.name + ", next check in " + schedule.interval / MIN + " minute(s)");
+                        }
+                    } finally {
+                        schedule.unlock();
+                    }
+                }
+
+                // Tests trigger the pre-creation explicitly
+                if (!force && !Functions.getIsUnitTest()) {
+                    JCloudsPreCreationThread.preCreate(cloud, servers);
+                }
+            } catch (JCloudsCloud.LoginFailure ex) {
+                LOGGER.log(Level.WARNING, "Unable to authenticate: " + ex.getMessage());
+            } catch (Throwable ex) {
+                LOGGER.log(Level.SEVERE, "Enable to perform the cleanup", ex);
+            }
+        }
+
+        schedules.keySet().retainAll(cloudNames());
+        lastPlans.keySet().retainAll(cloudNames());
+        ActivityIndex.get().prune();
+        BootProfiles.get().prune(JCloudsCloud.getClouds());
     }
 
-    private void cleanOrphanedFips() {
+    private static List<String> cloudNames() {
+        List<String> names = new ArrayList<>();
         for (JCloudsCloud cloud : JCloudsCloud.getClouds()) {
-            List<String> cloudStillFips = getStillFipsForCloud(cloud);
+            names.add(cloud.name);
+        }
+        return names;
+    }
 
-            List<String> leaked = new ArrayList<>(cloud.getOpenstack().getFreeFipIds());
-            List<String> freed = new ArrayList<>(leaked);
-            leaked.retainAll(cloudStillFips); // Free on 2 checks
-            freed.removeAll(leaked); // Just freed
+    /**
+     * Reconcile the cloud regardless of its schedule.
+     *
+     * When the cloud is being reconciled at the moment, wait for it to complete instead of starting another one.
+     */
+    /*package*/ void reconcileNow(@Nonnull JCloudsCloud cloud) throws InterruptedException {
+        Schedule schedule = schedules.computeIfAbsent(cloud.name, n -> new Schedule());
+        long now = System.currentTimeMillis();
+        if (!schedule.tryLock(Long.MAX_VALUE)) {
+            schedule.lock();
+            schedule.unlock();
+            return;
+        }
+        try {
+            schedule.reschedule(now, reconcile(cloud));
+        } finally {
+            schedule.unlock();
+        }
+    }
 
-            synchronized (stillFips) {
-                cloudStillFips.clear();
-                cloudStillFips.addAll(freed);
+    /**
+     * Compute and execute the reconciliation plan for the cloud.
+     *
+     * @return Number of problems found.
+     */
+    private int reconcile(@Nonnull JCloudsCloud cloud) throws InterruptedException {
+        Openstack os = cloud.getOpenstack();
+        List<Server> servers = os.getRunningNodes();
+        List<String> freeFips = os.getFreeFipIds();
+        List<String> cloudStillVolumes = getStillVolumesForCloud(cloud);
+        List<Volume> freeVolumes = Collections.emptyList();
+        if (usesVolumes(cloud) || !cloudStillVolumes.isEmpty()) {
+            try {
+                freeVolumes = os.getFreeVolumes();
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Unable to list volumes in cloud " + cloud.name, ex);
             }
+        }
+        List<JCloudsComputer> computers = new ArrayList<>();
+        for (JCloudsComputer computer : JCloudsComputer.getAll()) {
+            if (cloud.name.equals(computer.getId().getCloudName())) {
+                computers.add(computer);
+            }
+        }
 
-            for (String fip : leaked) {
-                try {
-                    cloud.getOpenstack().destroyFip(fip);
-                } catch (ClientResponseException ex) {
-                    // The tenant is probably reusing pre-allocated FIPs without permission to (de)allocate new.
-                    // https://github.com/jenkinsci/openstack-cloud-plugin/issues/66#issuecomment-207296059
-                    if (ex.getStatusCode() == StatusCode.FORBIDDEN) {
-                        continue;
+        List<String> cloudStillFips = getStillFipsForCloud(cloud);
+        List<String> cloudPreallocatedFips = getPreallocatedFipsForCloud(cloud);
+        ReconciliationPlan plan;
+        int drift;
+        synchronized (stillFips) {
+            plan = ReconciliationPlan.compute(
+                    cloud.name, servers, computers,
+                    freeFips, new ArrayList<>(cloudStillFips),
+                    freeVolumes, new ArrayList<>(cloudStillVolumes)
+            );
+            cloudStillFips.clear();
+            cloudStillFips.addAll(plan.getFreedFips());
+            cloudStillVolumes.clear();
+            cloudStillVolumes.addAll(plan.getFreedVolumes());
+
+            // Revisit soon so the FIPs just freed can be confirmed leaked, unless they are known not to be ours to release
+            List<String> freed = new ArrayList<>(plan.getFreedFips());
+            freed.removeAll(cloudPreallocatedFips);
+            drift = freed.size();
+        }
+        lastPlans.put(cloud.name, plan);
+        InventorySnapshot.get().record(cloud, os, plan.getInScope());
+
+        int leakedVolumes = plan.getActions(ReconciliationPlan.OrphanedVolume.class).size();
+        if (leakedVolumes > 0) {
+            LOGGER.info("Deleting " + leakedVolumes + " leaked volume(s) in cloud " + cloud.name);
+        }
+
+        drift += plan.execute(cloud);
+
+        for (ReconciliationPlan.OrphanedFip fip : plan.getActions(ReconciliationPlan.OrphanedFip.class)) {
+            if (fip.isForbidden()) {
+                synchronized (stillFips) {
+                    if (!cloudPreallocatedFips.contains(fip.getFip())) {
+                        cloudPreallocatedFips.add(fip.getFip());
                     }
-                    LOGGER.log(Level.WARNING, "Unable to release leaked floating IP", ex);
-                } catch (Exception ex) {
-                    LOGGER.log(Level.WARNING, "Unable to release leaked floating IP", ex);
                 }
             }
         }
+
+        return drift;
+    }
+
+    /**
+     * Plan of the last reconciliation of the cloud, null if not reconciled yet.
+     */
+    public @CheckForNull ReconciliationPlan getLastPlan(@Nonnull String cloudName) {
+        return lastPlans.get(cloudName);
     }
 
     private List<String> getStillFipsForCloud(JCloudsCloud cloud) {
@@ -107,6 +241,26 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
         }
     }
 
+    private List<String> getStillVolumesForCloud(JCloudsCloud cloud) {
+        synchronized (stillFips) {
+            return stillVolumes.get(cloud.name);
+        }
+    }
+
+    private static boolean usesVolumes(@Nonnull JCloudsCloud cloud) {
+        for (JCloudsSlaveTemplate template : cloud.getTemplates()) {
+            BootSource bs = template.getEffectiveSlaveOptions().getBootSource();
+            if (bs instanceof BootSource.VolumeFromImage || bs instanceof BootSource.VolumeSnapshot) return true;
+        }
+        return false;
+    }
+
+    private List<String> getPreallocatedFipsForCloud(JCloudsCloud cloud) {
+        synchronized (stillFips) {
+            return preallocatedFips.get(cloud.name);
+        }
+    }
+
     private void terminateNodesPendingDeletion() {
         for (final JCloudsComputer comp : JCloudsComputer.getAll()) {
             if (!comp.isIdle()) continue;
@@ -140,8 +294,7 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
             } catch (NoSuchElementException e) {
                 return "Server does not exist in OpenStack";
             }
-            return server.toString();
-            // TODO capturing server log might be useful
+            return server.toString(); // Console log is attached to cloud statistics when the node is terminated
         } catch (Exception ex) {
             LOGGER.log(Level.WARNING, "Failed diagnosing computer failure", ex);
             return "none";
@@ -156,102 +309,68 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
         }
     }
 
-    private void deleteComputer(JCloudsComputer comp, CauseOfInterruption coi) {
-        try {
-            for (Executor e : comp.getExecutors()) {
-                e.interrupt(Result.ABORTED, coi);
-            }
-            for(Executor e : comp.getOneOffExecutors()){
-                e.interrupt(Result.ABORTED, coi);
-            }
-            comp.deleteSlave();
-        } catch (Throwable e) {
-            LOGGER.log(Level.WARNING, "Failed to disconnect and delete " + comp.getName(), e);
-        }
-    }
+    @Override protected Level getNormalLoggingLevel() { return Level.OFF; }
+    @Override protected Level getSlowLoggingLevel() { return Level.INFO; }
 
-    /**
-     * @return Servers not destroyed as they are in scope.
-     */
-    private @Nonnull HashMap<JCloudsCloud, List<Server>> destroyServersOutOfScope() {
-        HashMap<JCloudsCloud, List<Server>> runningServers = new HashMap<>();
-        for (JCloudsCloud jc : JCloudsCloud.getClouds()) {
-            runningServers.put(jc, new ArrayList<>());
-            List<Server> servers = jc.getOpenstack().getRunningNodes();
-            for (Server server : servers) {
-                ServerScope scope = ServerScope.extract(server);
-                if (scope.isOutOfScope(server)) {
-                    LOGGER.info("Server " + server.getName() + " run out of its scope " + scope + ". Terminating: " + server);
-                    AsyncResourceDisposer.get().dispose(new DestroyMachine(jc.name, server.getId()));
-                } else {
-                    runningServers.get(jc).add(server);
-                }
-            }
-        }
+    /*package*/ static class MessageInterruption extends CauseOfInterruption {
+        private static final long serialVersionUID = 7125610351278586647L;
 
-        return runningServers;
-    }
+        private final String msg;
 
-    private void terminatesNodesWithoutServers(@Nonnull HashMap<JCloudsCloud, List<Server>> runningServers) {
-        Map<String, JCloudsComputer> jenkinsComputers = new HashMap<>();
-        for (JCloudsComputer computer: JCloudsComputer.getAll()) {
-            JCloudsSlave node = computer.getNode();
-            if (node != null) {
-                jenkinsComputers.put(node.getServerId(), computer);
-            }
+        /*package*/ MessageInterruption(String msg) {
+            this.msg = msg;
         }
 
-        // Eliminate computers we have servers for
-        for (Map.Entry<JCloudsCloud, List<Server>> e: runningServers.entrySet()) {
-            for (Server server : e.getValue()) {
-                jenkinsComputers.remove(server.getId());
-            }
+        @Override public String getShortDescription() {
+            return msg;
         }
+    }
 
-        for (Map.Entry<String, JCloudsComputer> entry : jenkinsComputers.entrySet()) {
-            JCloudsComputer computer = entry.getValue();
-            String id = entry.getKey();
-            String cloudName = computer.getId().getCloudName();
-            JCloudsCloud cloud;
-            try {
-                cloud = JCloudsCloud.getByName(cloudName);
-            } catch (IllegalArgumentException e) {
-                LOGGER.warning("The cloud " + cloudName + " does not longer exists for " + computer.getName());
-                // TODO: we ware unable to perform the double lookup - keeping the node alive. Once we are confident
-                // enough in this, we can do the cleanup anyway
-                continue;
-            }
-
-            try { // Double check server does not exist before interrupting jobs
-                Server explicitLookup = cloud.getOpenstack().getServerById(id);
-                if (Openstack.isOccupied(explicitLookup)) {
-                    LOGGER.severe(getClass().getSimpleName() + " incorrectly detected orphaned computer for " + explicitLookup);
-                    continue; // Do not kill it
-                }
-            } catch (NoSuchElementException expected) {
-                // Gone as expected
+    /**
+     * Adaptive schedule of single cloud reconciliation.
+     */
+    /**
+     * Reconciliations of a cloud are serialized so the FIPs freed by one plan are not deleted by another started at the
+     * same time.
+     */
+    private static final class Schedule {
+        private final @Nonnull ReentrantLock running = new ReentrantLock();
+        private long interval = MIN_INTERVAL; // Guarded by running
+        private long nextRun = 0; // Due immediately, guarded by running
+
+        /**
+         * Claim the reconciliation if due and not running already.
+         */
+        private boolean tryLock(long now) {
+            if (!running.tryLock()) return false;
+            if (now < nextRun) {
+                running.unlock();
+                return false;
             }
-
-            String msg = "OpenStack server (" + id + ") is not running for computer " + computer.getName() + ". Terminating!";
-            LOGGER.warning(msg);
-            deleteComputer(computer, new MessageInterruption(msg));
+            // Not to be due again should the reconciliation fail
+            nextRun = now + interval - MIN_INTERVAL / 2;
+            return true;
         }
-    }
 
-    @Override protected Level getNormalLoggingLevel() { return Level.OFF; }
-    @Override protected Level getSlowLoggingLevel() { return Level.INFO; }
-
-    private static class MessageInterruption extends CauseOfInterruption {
-        private static final long serialVersionUID = 7125610351278586647L;
-
-        private final String msg;
+        /**
+         * Claim the reconciliation, waiting for the running one to complete.
+         */
+        private boolean lock() {
+            running.lock();
+            return true;
+        }
 
-        private MessageInterruption(String msg) {
-            this.msg = msg;
+        private void unlock() {
+            running.unlock();
         }
 
-        @Override public String getShortDescription() {
-            return msg;
+        private void reschedule(long now, int drift) {
+            interval = drift > 0
+                    ? MIN_INTERVAL
+                    : Math.min(interval * 2, MAX_INTERVAL)
+            ;
+            // Tolerate the periodic work to tick a bit earlier
+            nextRun = now + interval - MIN_INTERVAL / 2;
         }
     }
 }
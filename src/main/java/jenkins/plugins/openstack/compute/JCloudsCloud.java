@@ -7,6 +7,7 @@ import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import hudson.Extension;
 import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
 import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Failure;
@@ -27,6 +28,7 @@ import jenkins.plugins.openstack.compute.auth.OpenstackCredentials;
 import jenkins.plugins.openstack.compute.auth.OpenstackCredentialv2;
 import jenkins.plugins.openstack.compute.auth.OpenstackCredentialv3;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
 import jenkins.plugins.openstack.compute.slaveopts.LauncherFactory;
 import jenkins.util.Timer;
 import org.acegisecurity.Authentication;
@@ -38,11 +40,13 @@ import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 import org.openstack4j.api.exceptions.AuthenticationException;
+import org.openstack4j.model.compute.Flavor;
 import org.openstack4j.model.compute.Server;
 
 import javax.annotation.CheckForNull;
@@ -56,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedDeque;
@@ -92,6 +97,17 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
 
     private /*final*/ @Nonnull String credentialId; // Name differs from property name not to break the persistence
 
+    private @CheckForNull PlacementStrategy placementStrategy; // null for first fit
+
+    private boolean spillover;
+
+    // Cloud is replaced by a new instance when reconfigured so it never needs to be invalidated
+    private transient volatile SlaveOptions effectiveSlaveOptions;
+
+    private transient volatile QuotaTracker quota;
+
+    private transient volatile CircuitBreaker circuitBreaker;
+
     // Backward compatibility
     private transient @Deprecated Integer instanceCap;
     private transient @Deprecated Integer retentionTime;
@@ -212,10 +228,15 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         for(JCloudsSlaveTemplate t: templates) {
             t.setOwner(this);
         }
+        ReadinessStatistics.configured(name, templates);
     }
 
     public @Nonnull SlaveOptions getEffectiveSlaveOptions() {
-        return DescriptorImpl.DEFAULTS.override(slaveOptions);
+        SlaveOptions effective = effectiveSlaveOptions;
+        if (effective == null) {
+            effectiveSlaveOptions = effective = DescriptorImpl.DEFAULTS.override(slaveOptions);
+        }
+        return effective;
     }
 
     public @Nonnull SlaveOptions getRawSlaveOptions() {
@@ -226,6 +247,70 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         return templates;
     }
 
+    public @Nonnull PlacementStrategy getPlacementStrategy() {
+        return placementStrategy == null ? PlacementStrategy.FirstFit.FIRST_FIT : placementStrategy;
+    }
+
+    @DataBoundSetter
+    public void setPlacementStrategy(@CheckForNull PlacementStrategy placementStrategy) {
+        this.placementStrategy = placementStrategy instanceof PlacementStrategy.FirstFit ? null : placementStrategy;
+    }
+
+    public boolean isSpillover() {
+        return spillover;
+    }
+
+    @DataBoundSetter
+    public void setSpillover(boolean spillover) {
+        this.spillover = spillover;
+    }
+
+    @Restricted(NoExternalUse.class)
+    public @Nonnull QuotaTracker getQuota() {
+        QuotaTracker q = quota;
+        if (q == null) {
+            synchronized (this) {
+                if (quota == null) {
+                    quota = new QuotaTracker();
+                }
+                q = quota;
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Servers running in the cloud, provisionally taken from the inventory snapshot right after startup.
+     */
+    private @Nonnull List<ServerInfo> getRunningServers() {
+        List<ServerInfo> provisional = InventorySnapshot.get().getProvisionalServers(name);
+        if (provisional != null) return provisional;
+
+        return getOpenstack().getRunningNodes().stream().map(ServerInfo::of).collect(Collectors.toList());
+    }
+
+    @Restricted(NoExternalUse.class)
+    public @Nonnull CircuitBreaker getCircuitBreaker() {
+        CircuitBreaker cb = circuitBreaker;
+        if (cb == null) {
+            synchronized (this) {
+                if (circuitBreaker == null) {
+                    circuitBreaker = new CircuitBreaker(name);
+                }
+                cb = circuitBreaker;
+            }
+        }
+        return cb;
+    }
+
+    /**
+     * Progress of reconciliation after Jenkins startup, null when done.
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull String getStartupProgress() {
+        return StartupReconciliation.get().getProgress(name);
+    }
+
     public @Nonnull String getEndPointUrl() {
         return endPointUrl;
     }
@@ -245,9 +330,7 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
 
         final Queue<JCloudsSlaveTemplate> queue = new ConcurrentLinkedDeque<>();
 
-        List<JCloudsComputer> cloudComputers = JCloudsComputer.getAll().stream().filter(
-                it -> name.equals(it.getId().getCloudName())
-        ).collect(Collectors.toList());
+        List<JCloudsComputer> cloudComputers = getComputers();
 
         int nodeCount = cloudComputers.size();
         if (nodeCount >= globalMax) {
@@ -255,7 +338,7 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         }
 
 
-        final List<Server> runningNodes = getOpenstack().getRunningNodes();
+        final List<ServerInfo> runningNodes = getRunningServers();
 
         int serverCount = runningNodes.size();
         if (serverCount >= globalMax) {
@@ -265,33 +348,93 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         int globalCapacity = globalMax - Math.max(nodeCount, serverCount);
         assert globalCapacity > 0;
 
+        PlacementStrategy strategy = getPlacementStrategy();
+        Openstack openstack = getOpenstack();
+        QuotaTracker.Headroom headroom = getQuota().getHeadroom(openstack);
+        Map<String, Flavor> flavors = getQuota().getFlavors(openstack);
+        CircuitBreaker breaker = getCircuitBreaker();
+        List<PlacementStrategy.Candidate> candidates = new ArrayList<>();
         for (JCloudsSlaveTemplate t : templates) {
             if (t.canProvision(label)) {
+                if (!breaker.isAvailable(t)) continue; // Failing recently
                 SlaveOptions opts = t.getEffectiveSlaveOptions();
                 final int templateMax = opts.getInstanceCap();
-                long templateNodeCount = Math.max(
-                        cloudComputers.stream().filter(it -> t.getName().equals(it.getId().getTemplateName())).count(),
-                        runningNodes.stream().filter(t::hasProvisioned).count()
-                );
+                long templateNodeCount = getNodeCount(t, cloudComputers, runningNodes);
                 if (templateNodeCount >= templateMax) continue; // Exceeded
 
                 long templateCapacity = templateMax - templateNodeCount;
                 assert templateCapacity > 0;
 
-                for (int i = 0; i < templateCapacity; i++) {
-                    int size = queue.size();
-                    if (size >= globalCapacity || size >= excessWorkload) return queue;
+                // No need to consider more than can be provisioned in total
+                int capacity = (int) Math.min(templateCapacity, Math.min(globalCapacity, excessWorkload));
+                candidates.add(new PlacementStrategy.Candidate(
+                        t, capacity, (int) templateNodeCount, opts.getNumExecutors(), flavorOf(opts, flavors)
+                ));
+            }
+        }
 
-                    queue.add(t);
-                }
+        for (JCloudsSlaveTemplate t : strategy.place(candidates)) {
+            int size = queue.size();
+            if (size >= globalCapacity || size >= excessWorkload) return queue;
+
+            SlaveOptions opts = t.getEffectiveSlaveOptions();
+            if (!headroom.take(flavorOf(opts, flavors), opts.getFloatingIpPool() != null)) {
+                LOGGER.fine("Quota exceeded for template " + t.getName() + " in cloud " + name + ": " + headroom);
+                continue; // Smaller flavor might still fit
             }
+
+            queue.add(t);
         }
 
         return queue;
     }
 
+    /**
+     * Number of agents that can be provisioned for label without violating instanceCap constraints.
+     *
+     * Servers are counted as seen by the last reconciliation so OpenStack is not asked.
+     */
+    /*package*/ int getCachedCapacity(@CheckForNull Label label) {
+        List<JCloudsComputer> cloudComputers = getComputers();
+        ReconciliationPlan plan = Jenkins.get().getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class).getLastPlan(name);
+        List<ServerInfo> runningNodes = plan == null ? Collections.emptyList() : plan.getInScope();
+
+        long globalCapacity = (long) getEffectiveSlaveOptions().getInstanceCap() - Math.max(cloudComputers.size(), runningNodes.size());
+        long capacity = 0;
+        for (JCloudsSlaveTemplate t : templates) {
+            if (!t.canProvision(label)) continue;
+
+            long templateCapacity = t.getEffectiveSlaveOptions().getInstanceCap() - getNodeCount(t, cloudComputers, runningNodes);
+            capacity += Math.max(0, templateCapacity);
+        }
+        return (int) Math.max(0, Math.min(globalCapacity, capacity));
+    }
+
+    private @Nonnull List<JCloudsComputer> getComputers() {
+        return JCloudsComputer.getAll().stream().filter(
+                it -> name.equals(it.getId().getCloudName())
+        ).collect(Collectors.toList());
+    }
+
+    private static long getNodeCount(
+            @Nonnull JCloudsSlaveTemplate t, @Nonnull List<JCloudsComputer> cloudComputers, @Nonnull List<ServerInfo> runningNodes
+    ) {
+        return Math.max(
+                cloudComputers.stream().filter(it -> t.getName().equals(it.getId().getTemplateName())).count(),
+                runningNodes.stream().filter(t::hasProvisioned).count()
+        );
+    }
+
+    private static @CheckForNull Flavor flavorOf(@Nonnull SlaveOptions opts, @Nonnull Map<String, Flavor> flavors) {
+        String id = opts.getHardwareId();
+        return id == null ? null : flavors.get(id);
+    }
+
     @Override
     public Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
+        excessWorkload = SpilloverCoordinator.share(this, label, excessWorkload);
+        if (excessWorkload <= 0) return Collections.emptyList();
+
         Queue<JCloudsSlaveTemplate> templateProvider = getAvailableTemplateProvider(label, excessWorkload);
 
         List<PlannedNode> plannedNodeList = new ArrayList<>();
@@ -303,9 +446,13 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
                 break;
             }
 
+            if (!getCircuitBreaker().attempt(template)) continue; // Probe in progress
+
             LOGGER.fine("Provisioning slave for " + label + " from template " + template.getName());
 
-            int numExecutors = template.getEffectiveSlaveOptions().getNumExecutors();
+            SlaveOptions opts = template.getEffectiveSlaveOptions();
+            getQuota().consume(flavorOf(opts, getQuota().getFlavors(getOpenstack())), opts.getFloatingIpPool() != null);
+            int numExecutors = opts.getNumExecutors();
 
             ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, template.getName());
             Future<Node> task = Computer.threadPoolForRemoting.submit(new NodeCallable(this, template, id));
@@ -420,6 +567,18 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         }
     }
 
+    /**
+     * Plain text report of the last reconciliation of this cloud for operators to inspect the drift.
+     */
+    @Restricted(NoExternalUse.class)
+    public void doReconciliation(StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+
+        rsp.setContentType("text/plain;charset=UTF-8");
+        ReconciliationPlan plan = Jenkins.get().getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class).getLastPlan(name);
+        rsp.getWriter().print(plan == null ? "Cloud " + name + " was not reconciled yet" : plan.toString());
+    }
+
     private void provisionAsynchronouslyNotToBlockTheRequestThread(JCloudsSlaveTemplate t) throws Throwable {
         Authentication auth = Jenkins.getAuthentication();
         Callable<Void> performProvisioning = () -> {
@@ -464,8 +623,10 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         JCloudsSlave node;
         try {
             provisioningListener.onStarted(id);
+            ActivityIndex.get().track(id);
             node = template.provisionSlave(this, id);
             provisioningListener.onComplete(id, node);
+            ActivityIndex.get().track(id, node);
         } catch (Throwable ex) {
             provisioningListener.onFailure(id, ex);
             throw ex;
@@ -486,7 +647,9 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
             if (credential == null) {
                 throw new LoginFailure("No credentials found for cloud " + name + " (id=" + getCredentialsId() + ")");
             }
-            return Openstack.Factory.get(endPointUrl, ignoreSsl, credential, zone);
+            Openstack os = Openstack.Factory.get(endPointUrl, ignoreSsl, credential, zone);
+            InventorySnapshot.get().prime(name, os);
+            return os;
         } catch (AuthenticationException ex) {
             throw new LoginFailure(name, ex);
         } catch (FormValidation ex) {
@@ -12,6 +12,7 @@ import hudson.slaves.OfflineCause.SimpleOfflineCause;
 import hudson.slaves.RetentionStrategy;
 import hudson.slaves.SlaveComputer;
 import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.jenkinsci.plugins.cloudstats.TrackedItem;
 import org.kohsuke.accmod.Restricted;
@@ -59,6 +60,7 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
     public JCloudsComputer(JCloudsSlave slave) {
         super(slave);
         this.provisioningId = slave.getId();
+        TemplateCensus.get().changed(this);
     }
 
     @Override
@@ -135,20 +137,27 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
         return used.get();
     }
 
+    @Override
+    public void taskAccepted(Executor executor, Queue.Task task) {
+        super.taskAccepted(executor, task);
+        TemplateCensus.get().changed(this);
+    }
+
     @Override
     public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
         super.taskCompleted(executor, task, durationMS);
-        checkSlaveAfterTaskCompletion();
+        checkSlaveAfterTaskCompletion(executor);
     }
 
     @Override
     public void taskCompletedWithProblems(Executor executor, Queue.Task task, long durationMS, Throwable problems) {
         super.taskCompletedWithProblems(executor, task, durationMS, problems);
-        checkSlaveAfterTaskCompletion();
+        checkSlaveAfterTaskCompletion(executor);
     }
 
-    private void checkSlaveAfterTaskCompletion() {
+    private void checkSlaveAfterTaskCompletion(Executor executor) {
         used.incrementAndGet();
+        TemplateCensus.get().taskCompleted(this, executor);
 
         // If the retention time for this computer is zero, this means it
         // should not be re-used: mark the node as "pending delete".
@@ -157,6 +166,12 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
         }
     }
 
+    @Override
+    protected void onRemoved() {
+        super.onRemoved();
+        TemplateCensus.get().changed(this);
+    }
+
     // Hide /configure view inherited from Computer
     @Restricted(DoNotUse.class)
     public void doConfigure(StaplerResponse rsp) throws IOException {
@@ -203,8 +218,21 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
 
 
     public void setChannel(Channel channel, OutputStream launchLog, Channel.Listener listener) throws IOException, InterruptedException {
+        boolean launching = isLaunching();
         super.setChannel(channel, launchLog, listener);
         connectedSince = System.currentTimeMillis();
+
+        JCloudsSlave node = getNode();
+        if (launching && node != null) {
+            BootProfiles.get().recordOnline(node);
+        }
+    }
+
+    // Connecting for the first time, not reconnecting
+    private boolean isLaunching() {
+        if (connectedSince != 0) return false;
+        ProvisioningActivity activity = CloudStatistics.get().getActivityFor(this);
+        return activity != null && activity.getPhaseExecution(ProvisioningActivity.Phase.OPERATING) == null;
     }
 
     public long getConnectedSince(){
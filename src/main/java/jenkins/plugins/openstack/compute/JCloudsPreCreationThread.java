@@ -1,21 +1,20 @@
 package jenkins.plugins.openstack.compute;
 
 import java.lang.Math;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import hudson.Extension;
-import hudson.Functions;
-import hudson.model.TaskListener;
-import hudson.model.AsyncPeriodicWork;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 
 /**
- * Periodically ensure enough slaves are created.
+ * Ensure enough slaves are created.
  *
  * The goal of this class is to pre-provision slaves ahead of time to avoid jobs
  * having to wait until a slave gets provisioned to run.
@@ -33,46 +32,44 @@ import hudson.model.AsyncPeriodicWork;
  *
  * The pre-provisioning always respects the instance capacity (either global or
  * per template).
+ *
+ * Invoked by {@link JCloudsCleanupThread} on every tick so it can reuse the server listing of the cloud reconciliation.
  */
-@Extension @Restricted(NoExternalUse.class)
-public final class JCloudsPreCreationThread extends AsyncPeriodicWork {
+@Restricted(NoExternalUse.class)
+public final class JCloudsPreCreationThread {
     private static final Logger LOGGER = Logger.getLogger(JCloudsPreCreationThread.class.getName());
 
-    public JCloudsPreCreationThread() {
-        super("OpenStack slave pre-creation");
-    }
-
-    @Override
-    public long getRecurrencePeriod() {
-        return Functions.getIsUnitTest() ? Long.MAX_VALUE : MIN * 2;
-    }
+    private JCloudsPreCreationThread() {}
 
-    @Override
-    public void execute(TaskListener listener) {
-        HashMap<JCloudsSlaveTemplate, JCloudsCloud> requiredCapacity = new HashMap<>();
+    /**
+     * Pre-create slaves for all clouds listing the servers afresh.
+     */
+    public static void execute() {
         for (JCloudsCloud cloud : JCloudsCloud.getClouds()) {
-            for (JCloudsSlaveTemplate template : cloud.getTemplates()) {
-                SlaveOptions to = template.getEffectiveSlaveOptions();
-                if (to.getInstancesMin() > 0) {
-                    requiredCapacity.put(template, cloud);
-                }
-            }
+            preCreate(cloud, null);
         }
+    }
 
-        if (requiredCapacity.isEmpty()) return; // No capacity required anywhere
-
-        for (Map.Entry<JCloudsSlaveTemplate, JCloudsCloud> entry : requiredCapacity.entrySet()) {
-            JCloudsCloud cloud = entry.getValue();
-            JCloudsSlaveTemplate template = entry.getKey();
+    /**
+     * Pre-create slaves for templates of a cloud.
+     *
+     * @param servers Running servers of the cloud if already listed, null to list them when needed.
+     */
+    /*package*/ static void preCreate(@Nonnull JCloudsCloud cloud, @CheckForNull List<ServerInfo> servers) {
+        for (JCloudsSlaveTemplate template : cloud.getTemplates()) {
             SlaveOptions so = template.getEffectiveSlaveOptions();
             Integer min = so.getInstancesMin();
             Integer cap = so.getInstanceCap();
+            if (min <= 0) continue; // No capacity required
 
             int available = template.getAvailableNodesTotal();
             if (available >= min) continue; // Satisfied
             if (available >= cap) continue; // Obey instanceCap even if instanceMin > instanceCap
 
-            int runningNodes = template.getRunningNodes().size();
+            if (servers == null) {
+                servers = cloud.getOpenstack().getRunningNodes().stream().map(ServerInfo::of).collect(Collectors.toList());
+            }
+            int runningNodes = (int) servers.stream().filter(template::hasProvisioned).count();
 
             if (runningNodes >= cap) continue; // Obey instanceCap
 
@@ -82,6 +79,10 @@ public final class JCloudsPreCreationThread extends AsyncPeriodicWork {
             if (toProvision > 0) {
                 LOGGER.log(Level.INFO, "Pre-creating " + toProvision + " instance(s) for template " + template.getName() + " in cloud " + cloud.name);
                 for (int i = 0; i < toProvision; i++) {
+                    if (!cloud.getCircuitBreaker().attempt(template)) {
+                        LOGGER.info("Not pre-creating instances for template " + template.getName() + " as it is suspended");
+                        break;
+                    }
                     try {
                         cloud.provisionSlaveExplicitly(template);
                     } catch (Throwable ex) {
@@ -114,7 +115,4 @@ public final class JCloudsPreCreationThread extends AsyncPeriodicWork {
         }
         return false;
     }
-
-    @Override protected Level getNormalLoggingLevel() { return Level.FINE; }
-    @Override protected Level getSlowLoggingLevel() { return Level.INFO; }
 }
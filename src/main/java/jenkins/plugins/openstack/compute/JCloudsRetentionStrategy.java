@@ -25,6 +25,16 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
         readResolve();
     }
 
+    /**
+     * Decide whether the computer is to be terminated.
+     *
+     * Instead of polling every minute, the number of minutes until the earliest moment the computer can reach its idle
+     * deadline is returned so {@link hudson.slaves.ComputerRetentionWork} does not check it again before that. Busy
+     * computers cannot be terminated sooner than the full retention time, and computers that became busy and idle again
+     * are simply rescheduled when the outdated deadline elapses.
+     *
+     * @return Minutes until the next check.
+     */
     @Override
     public long check(JCloudsComputer c) {
         if (disabled) {
@@ -39,42 +49,47 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
         }
 
         try {
-            doCheck(c);
+            return Math.max(1, doCheck(c));
         } finally {
             checkLock.unlock();
         }
-        return 1;
     }
 
-    private void doCheck(JCloudsComputer c) {
-        if (c.isPendingDelete()) return; // No need to do it again
-        if (c.isConnecting()) return; // Do not discard slave while launching for the first time when "idle time" does not make much sense
-        if (!c.isIdle() || c.isUserOffline()) return; // Occupied by user initiated activity
+    private long doCheck(JCloudsComputer c) {
+        if (c.isPendingDelete()) return 1; // No need to do it again
+        if (c.isConnecting()) return 1; // Do not discard slave while launching for the first time when "idle time" does not make much sense
+        if (c.isUserOffline()) return 1; // Occupied by user initiated activity, can be brought back any time
 
         final JCloudsSlave node = c.getNode();
-        if (node == null) return; // Node is gone already
+        if (node == null) return 1; // Node is gone already
 
         final int retentionTime = node.getSlaveOptions().getRetentionTime();
-        if (retentionTime <= 0) return; // 0 is handled in JCloudsComputer, negative values needs no handling
+        if (retentionTime <= 0) return MAX_DELAY; // 0 is handled in JCloudsComputer, negative values needs no handling
+        if (!c.isIdle()) return retentionTime; // Can not be idle for long enough sooner than that
+
         final long idleSince = c.getIdleStart();
-        final long idleMilliseconds = getNow() - idleSince;
-        if (idleMilliseconds > TimeUnit.MINUTES.toMillis(retentionTime)) {
-            if (JCloudsPreCreationThread.isNeededReadyComputer(node.getComputer())) {
-                LOGGER.fine("Keeping " + c .getName() + " to meet minimum requirements");
-                return;
-            }
-            LOGGER.info("Scheduling " + c .getName() + " for termination after " +  retentionTime+ " minutes as it was idle since " + new Date(idleSince));
-            if (LOGGER.isLoggable(Level.FINE)) {
-                try {
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    Jenkins.XSTREAM2.toXMLUTF8(node, out);
-                    LOGGER.fine(out.toString("UTF-8"));
-                } catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Failed to dump node config", e);
-                }
+        final long remaining = TimeUnit.MINUTES.toMillis(retentionTime) - (getNow() - idleSince);
+        if (remaining >= 0) {
+            // Round up not to check before the deadline
+            return (remaining + TimeUnit.MINUTES.toMillis(1) - 1) / TimeUnit.MINUTES.toMillis(1);
+        }
+
+        if (JCloudsPreCreationThread.isNeededReadyComputer(node.getComputer())) {
+            LOGGER.fine("Keeping " + c .getName() + " to meet minimum requirements");
+            return retentionTime;
+        }
+        LOGGER.info("Scheduling " + c .getName() + " for termination after " +  retentionTime+ " minutes as it was idle since " + new Date(idleSince));
+        if (LOGGER.isLoggable(Level.FINE)) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Jenkins.XSTREAM2.toXMLUTF8(node, out);
+                LOGGER.fine(out.toString("UTF-8"));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to dump node config", e);
             }
-            c.setPendingDelete(true);
         }
+        c.setPendingDelete(true);
+        return 1;
     }
 
     /*package for mocking*/ long getNow() {
@@ -82,11 +97,13 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
     }
 
     /**
-     * Try to connect to it ASAP.
+     * Try to connect to it ASAP, or once its cloud is reconciled after Jenkins startup.
      */
     @Override
     public void start(JCloudsComputer c) {
-        c.connect(false);
+        if (!StartupReconciliation.get().defer(c)) {
+            c.connect(false);
+        }
     }
 
     // no @Extension since this retention strategy is used only for cloud nodes that we provision automatically.
@@ -104,6 +121,11 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
 
     private static final Logger LOGGER = Logger.getLogger(JCloudsRetentionStrategy.class.getName());
 
+    /**
+     * Upper bound of the check period for computers that are never terminated because of being idle.
+     */
+    private static final long MAX_DELAY = 60;
+
     @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
     /*package*/ static boolean disabled = Boolean.getBoolean(JCloudsRetentionStrategy.class.getName() + ".disabled");
 }
@@ -13,6 +13,7 @@ import hudson.slaves.EnvironmentVariablesNodeProperty;
 import hudson.slaves.NodeProperty;
 import hudson.slaves.OfflineCause;
 import hudson.slaves.RetentionStrategy;
+import hudson.tools.ToolLocationNodeProperty;
 import jenkins.model.Jenkins;
 import jenkins.plugins.openstack.compute.internal.DestroyMachine;
 import jenkins.plugins.openstack.compute.internal.Openstack;
@@ -34,17 +35,23 @@ import org.openstack4j.model.compute.Server;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -65,6 +72,20 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
             ServerScope.METADATA_KEY
     );
 
+    // Nodes provisioned from the same template share an instance of options
+    private static final Interner<SlaveOptions> OPTIONS = Interners.newWeakInterner();
+
+    // Template node properties serialized once to be cloned for every node
+    private static final Map<NodeProperty<?>, String> PROPERTY_XML = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Node properties by their content as they do not implement equality, so options loaded from disk can be interned
+    private static final ConcurrentMap<String, NodeProperty<?>> PROPERTIES = CacheBuilder.newBuilder()
+            .weakValues().<String, NodeProperty<?>>build().asMap()
+    ;
+
+    // Node properties that are immutable and do not refer to the node so they can be shared by nodes
+    private static final List<Class<?>> SHARED_PROPERTIES = Collections.singletonList(ToolLocationNodeProperty.class);
+
     private final @Nonnull String cloudName;
     // Full/effective options
     private /*final*/ @Nonnull SlaveOptions options;
@@ -73,8 +94,14 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
 
     private /*final*/ @Nonnull String nodeId;
 
+    // Address does not change once the server is provisioned, null for nodes persisted before the field was introduced
+    private volatile @CheckForNull String publicAddress;
+
     private final long created = System.currentTimeMillis();
 
+    // Phase to attach console log to when terminated, if any
+    private transient volatile @CheckForNull ProvisioningActivity.Phase consoleLogPhase;
+
     // Backward compatibility
     private transient @Deprecated int overrideRetentionTime;
     private transient @Deprecated String jvmOptions;
@@ -84,6 +111,13 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
 
     public JCloudsSlave(
             @Nonnull ProvisioningActivity.Id id, @Nonnull Server metadata, @Nonnull String labelString, @Nonnull SlaveOptions slaveOptions
+    ) throws IOException, Descriptor.FormException {
+        this(id, metadata, Openstack.getAccessIpAddress(metadata), labelString, slaveOptions);
+    }
+
+    private JCloudsSlave(
+            @Nonnull ProvisioningActivity.Id id, @Nonnull Server metadata, @CheckForNull String publicAddress,
+            @Nonnull String labelString, @Nonnull SlaveOptions slaveOptions
     ) throws IOException, Descriptor.FormException {
         super(
                 Objects.requireNonNull(metadata.getName()),
@@ -94,12 +128,13 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
                 labelString,
                 null,
                 new JCloudsRetentionStrategy(),
-                mkNodeProperties(Openstack.getAccessIpAddress(metadata), slaveOptions.getNodeProperties())
+                mkNodeProperties(publicAddress, slaveOptions.getNodeProperties())
         );
         this.cloudName = id.getCloudName(); // TODO deprecate field
         this.provisioningId = id;
-        this.options = slaveOptions;
+        this.options = intern(slaveOptions);
         this.nodeId = metadata.getId();
+        this.publicAddress = publicAddress;
         this.cache = makeCache();
         setLauncher(new JCloudsLauncher(getLauncherFactory().createLauncher(this)));
     }
@@ -128,6 +163,8 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
                 extraEnvVars.putAll(templateEnvVars);
                 b.add(envVarsNP);
                 envVarsAdded = true;
+            } else if (SHARED_PROPERTIES.contains(templateNP.getClass())) {
+                b.add(templateNP);
             } else {
                 final NodeProperty<?> copyOfTemplateNP = makeCopy(templateNP);
                 b.add(copyOfTemplateNP);
@@ -140,9 +177,28 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         return nodePropertiesList;
     }
 
+    /**
+     * Intern options comparing their node properties by content.
+     */
+    private static @Nonnull SlaveOptions intern(@Nonnull SlaveOptions options) {
+        List<NodeProperty<?>> properties = options.getNodeProperties();
+        if (properties != null && !properties.isEmpty()) {
+            List<NodeProperty<?>> canonical = new ArrayList<>(properties.size());
+            for (NodeProperty<?> property : properties) {
+                String xml = PROPERTY_XML.computeIfAbsent(property, Jenkins.XSTREAM::toXML);
+                NodeProperty<?> existing = PROPERTIES.putIfAbsent(xml, property);
+                canonical.add(existing == null ? property : existing);
+            }
+            if (!canonical.equals(properties)) {
+                options = options.getBuilder().nodeProperties(canonical).build();
+            }
+        }
+        return OPTIONS.intern(options);
+    }
+
     @SuppressWarnings("unchecked")
-    private static <T> T makeCopy(final T original) {
-        final String xml = Jenkins.XSTREAM.toXML(original);
+    private static <T extends NodeProperty<?>> T makeCopy(final T original) {
+        final String xml = PROPERTY_XML.computeIfAbsent(original, Jenkins.XSTREAM::toXML);
         final Object copy = Jenkins.XSTREAM.fromXML(xml);
         return (T) copy;
     }
@@ -176,6 +232,7 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
             credentialsId = null;
             slaveType = null;
         }
+        options = intern(options);
 
         if (metadata != null && (nodeId == null || !nodeId.equals(metadata.getId()))) {
             nodeId = metadata.getId();
@@ -320,12 +377,19 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
     /**
      * Get public IP address of the server.
      *
+     * The address is captured when the slave is created so it does not query OpenStack unless the node was persisted
+     * without it.
+     *
      * @throws NoSuchElementException The server does not exist anymore. Plugin should not get slave to this state ever
      * but there is no way to prevent external machine deletion.
      */
     public @CheckForNull String getPublicAddress() throws NoSuchElementException {
-
-        return Openstack.getAccessIpAddress(getOpenstack(cloudName).getServerById(nodeId));
+        String address = publicAddress;
+        if (address == null) {
+            address = Openstack.getAccessIpAddress(getOpenstack(cloudName).getServerById(nodeId));
+            publicAddress = address;
+        }
+        return address;
     }
 
     /**
@@ -386,8 +450,16 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         }
     }
 
+    /**
+     * Attach the tail of server console log to given phase once terminated.
+     */
+    /*package*/ void captureConsoleLogOnTermination(@Nonnull ProvisioningActivity.Phase phase) {
+        consoleLogPhase = phase;
+    }
+
     @Override
     protected void _terminate(TaskListener listener) {
+        ProvisioningActivity.Phase consoleLogPhase = this.consoleLogPhase;
         CloudStatistics cloudStatistics = CloudStatistics.get();
         ProvisioningActivity activity = cloudStatistics.getActivityFor(this);
         if (activity != null) {
@@ -397,6 +469,9 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
             if (offlineCause != null) {
                 PhaseExecutionAttachment attachment = new PhaseExecutionAttachment(ProvisioningActivity.Status.WARN, offlineCause.toString());
                 cloudStatistics.attach(activity, ProvisioningActivity.Phase.COMPLETED, attachment);
+                if (consoleLogPhase == null) {
+                    consoleLogPhase = ProvisioningActivity.Phase.COMPLETED;
+                }
             }
         }
 
@@ -404,7 +479,8 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         AsyncResourceDisposer.get().dispose(
                 new RecordDisposal(
                         new DestroyMachine(cloudName, nodeId),
-                        provisioningId
+                        provisioningId,
+                        consoleLogPhase == null ? null : new ConsoleLogAttachment.Capture(cloudName, nodeId, provisioningId, consoleLogPhase)
                 )
         );
     }
@@ -430,14 +506,25 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
 
         private final @Nonnull Disposable inner;
         private final @Nonnull ProvisioningActivity.Id provisioningId;
+        // Performed once before the machine is destroyed
+        private @CheckForNull ConsoleLogAttachment.Capture capture;
 
-        private RecordDisposal(@Nonnull Disposable inner, @Nonnull ProvisioningActivity.Id provisioningId) {
+        private RecordDisposal(
+                @Nonnull Disposable inner, @Nonnull ProvisioningActivity.Id provisioningId,
+                @CheckForNull ConsoleLogAttachment.Capture capture
+        ) {
             this.inner = inner;
             this.provisioningId = provisioningId;
+            this.capture = capture;
         }
 
         @Override
         public @Nonnull State dispose() throws Throwable {
+            ConsoleLogAttachment.Capture capture = this.capture;
+            if (capture != null) {
+                this.capture = null;
+                capture.run();
+            }
             try {
                 return inner.dispose();
             } catch (Throwable ex) {
@@ -14,10 +14,10 @@ import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
 import jenkins.plugins.openstack.compute.internal.DestroyMachine;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
 import jenkins.plugins.openstack.compute.internal.TokenGroup;
 import jenkins.plugins.openstack.compute.slaveopts.BootSource;
 import jenkins.plugins.openstack.compute.slaveopts.LauncherFactory;
-import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
 import org.kohsuke.accmod.Restricted;
@@ -69,6 +69,7 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
 
     private transient Set<LabelAtom> labelSet;
     private /*final*/ transient JCloudsCloud cloud;
+    private transient volatile SlaveOptions effectiveSlaveOptions; // Computed once the owner is set
 
     // Backward compatibility
     private transient @Deprecated @SuppressWarnings("DeprecatedIsStillUsed") String imageId;
@@ -167,11 +168,16 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     /*package*/ void setOwner(JCloudsCloud cloud) {
         this.cloud = cloud;
         slaveOptions = slaveOptions.eraseDefaults(cloud.getEffectiveSlaveOptions());
+        effectiveSlaveOptions = null;
     }
 
     public @Nonnull SlaveOptions getEffectiveSlaveOptions() {
-        // Make sure only diff of defaults is saved so when defaults will change users are not stuck with outdated config
-        return cloud.getEffectiveSlaveOptions().override(slaveOptions);
+        SlaveOptions effective = effectiveSlaveOptions;
+        if (effective == null) {
+            // Make sure only diff of defaults is saved so when defaults will change users are not stuck with outdated config
+            effectiveSlaveOptions = effective = cloud.getEffectiveSlaveOptions().override(slaveOptions);
+        }
+        return effective;
     }
 
     public @Nonnull SlaveOptions getRawSlaveOptions() {
@@ -197,7 +203,15 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     }
 
     /*package*/ boolean hasProvisioned(@Nonnull Server server) {
-        return getName().equals(server.getMetadata().get(OPENSTACK_TEMPLATE_NAME_KEY));
+        return hasProvisioned(server.getMetadata());
+    }
+
+    /*package*/ boolean hasProvisioned(@Nonnull ServerInfo server) {
+        return hasProvisioned(server.getMetadata());
+    }
+
+    private boolean hasProvisioned(@CheckForNull Map<String, String> metadata) {
+        return metadata != null && getName().equals(metadata.get(OPENSTACK_TEMPLATE_NAME_KEY));
     }
 
     /**
@@ -213,23 +227,41 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     ) throws JCloudsCloud.ProvisioningFailedException {
         SlaveOptions opts = getEffectiveSlaveOptions();
         int timeout = opts.getStartTimeout();
-        Server server = provisionServer(null, id);
+        CircuitBreaker breaker = cloud.getCircuitBreaker();
+        Server server;
+        try {
+            server = provisionServer(null, id);
+        } catch (RuntimeException ex) {
+            breaker.failure(this, CircuitBreaker.landedZone(ex));
+            throw ex;
+        }
+        // Nova picks one unless configured
+        String zone = server.getAvailabilityZone();
 
         JCloudsSlave node = null;
         // Terminate node unless provisioned successfully
         try {
             node = new JCloudsSlave(id, server, labelString, opts);
 
+            ReadinessStatistics readiness = ReadinessStatistics.of(cloud.name, name);
+            boolean signalled = node.getLauncherFactory().isReadinessSignalled();
+            if (!signalled) {
+                Thread.sleep(Math.min(readiness.getFirstProbeDelay(), timeout));
+            }
+
             String cause;
+            Long notReady = null; // Last time the server was seen not ready
             while ((cause = cloud.slaveIsWaitingFor(node)) != null) {
-                if ((System.currentTimeMillis() - node.getCreatedTime()) > timeout) {
+                long waiting = System.currentTimeMillis() - node.getCreatedTime();
+                notReady = waiting;
+                if (waiting > timeout) {
 
                     String timeoutMessage = String.format("Failed to connect agent %s within timeout (%d ms): %s", node.getNodeName(), timeout, cause);
                     Error errorQuerying = null;
                     try {
                         Server freshServer = cloud.getOpenstack().getServerById(server.getId());
                         timeoutMessage += System.lineSeparator() + "Server state: " + freshServer;
-                        // TODO attach instance log (or tail of) to cloud statistics
+                        node.captureConsoleLogOnTermination(ProvisioningActivity.Phase.PROVISIONING);
                     } catch (NoSuchElementException ex) {
                         timeoutMessage += System.lineSeparator() + "Server does no longer exist: " + server.getId();
                     } catch (Error ex) {
@@ -243,11 +275,22 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
                     throw ex;
                 }
 
-                Thread.sleep(2000);
+                if (signalled) {
+                    OnlineSignal.await(node, timeout - waiting + 1);
+                } else {
+                    Thread.sleep(readiness.getProbeInterval(waiting));
+                }
             }
 
+            long ready = System.currentTimeMillis() - node.getCreatedTime();
+            // Unless signalled, the server got ready at some point between the last probe that failed and the one
+            // that succeeded. Recording the time it was detected would reflect the probe schedule rather than the server.
+            // When the first probe succeeded there is no lower bound, so the detection time is all that is known.
+            readiness.record(signalled || notReady == null ? ready : (notReady + ready) / 2);
+            breaker.success(this, zone);
             return node;
         } catch (Throwable ex) {
+            breaker.failure(this, zone);
             JCloudsCloud.ProvisioningFailedException cause = ex instanceof JCloudsCloud.ProvisioningFailedException
                     ? (JCloudsCloud.ProvisioningFailedException) ex
                     : new JCloudsCloud.ProvisioningFailedException(ex.getMessage(), ex)
@@ -263,8 +306,82 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
 
     @Restricted(NoExternalUse.class)
     public @Nonnull Server provisionServer(@CheckForNull ServerScope scope, @CheckForNull ProvisioningActivity.Id id) throws Openstack.ActionFailed {
-        final String serverName = getServerName();
         final SlaveOptions opts = getEffectiveSlaveOptions();
+        final Openstack openstack = cloud.getOpenstack();
+        ServerCreateBuilder builder = createServerRequest(
+                openstack, scope, id, opts, resolveNetworks(openstack, opts)
+        );
+        long started = System.currentTimeMillis();
+        Server server = openstack.bootAndWaitActive(builder, opts.getStartTimeout());
+        BootProfiles.get().record(cloud.name, name, BootProfile.Stage.BOOT, System.currentTimeMillis() - started);
+        return finishProvisioning(openstack, server, opts);
+    }
+
+    /**
+     * Request servers to boot without waiting for them to become active.
+     *
+     * Networks and provisioning activities are resolved once for the whole batch. Call {@link #finishProvisioning(Server)} for every server once
+     * it is ACTIVE.
+     *
+     * @throws Openstack.ActionFailed Some of the servers were not accepted. Those already requested are disposed.
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull List<Server> bootServers(@Nonnull ServerScope scope, int count) throws Openstack.ActionFailed {
+        if (count < 1) throw new IllegalArgumentException("Server count must be positive, got " + count);
+
+        final SlaveOptions opts = getEffectiveSlaveOptions();
+        final Openstack openstack = cloud.getOpenstack();
+        final List<String> networks = resolveNetworks(openstack, opts);
+
+        List<Server> servers = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                servers.add(openstack.boot(createServerRequest(openstack, scope, null, opts, networks)));
+            }
+        } catch (Throwable ex) {
+            // Do not leave the batch half provisioned
+            for (Server server : servers) {
+                AsyncResourceDisposer.get().dispose(new DestroyMachine(cloud.name, server.getId()));
+            }
+            throw ex;
+        }
+        return servers;
+    }
+
+    /**
+     * Perform the post-boot configuration of ACTIVE server booted by {@link #bootServers(ServerScope, int)}.
+     *
+     * @return Updated server.
+     * @throws Openstack.ActionFailed Server could not be configured. The server is disposed.
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull Server finishProvisioning(@Nonnull Server server) throws Openstack.ActionFailed {
+        return finishProvisioning(cloud.getOpenstack(), server, getEffectiveSlaveOptions());
+    }
+
+    private @CheckForNull List<String> resolveNetworks(@Nonnull Openstack openstack, @Nonnull SlaveOptions opts) {
+        String nid = opts.getNetworkId();
+        if (Util.fixEmpty(nid) == null) return null;
+
+        // Alternatives are chosen by their current capacity
+        boolean fixed = !nid.contains("|");
+        if (fixed) {
+            List<String> provisional = InventorySnapshot.get().getProvisionalNetworks(cloud.name, nid);
+            if (provisional != null) return provisional;
+        }
+
+        List<String> ids = selectNetworkIds(openstack, nid);
+        if (fixed) {
+            InventorySnapshot.get().recordNetworks(cloud.name, nid, ids);
+        }
+        return ids;
+    }
+
+    private @Nonnull ServerCreateBuilder createServerRequest(
+            @Nonnull Openstack openstack, @CheckForNull ServerScope scope, @CheckForNull ProvisioningActivity.Id id,
+            @Nonnull SlaveOptions opts, @CheckForNull List<String> networks
+    ) {
+        final String serverName = getServerName();
         final ServerCreateBuilder builder = Builders.server();
 
         builder.addMetadataItem(OPENSTACK_TEMPLATE_NAME_KEY, getName());
@@ -281,7 +398,6 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         // Ensure predictable server name so we can inject it into user data
         builder.name(serverName);
 
-        final Openstack openstack = cloud.getOpenstack();
         final BootSource bootSource = opts.getBootSource();
         if (bootSource == null) {
             LOGGER.warning("No " + BootSource.class.getSimpleName() + " set for " + getClass().getSimpleName() + " with name='" + getName() + "'.");
@@ -296,9 +412,7 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
             builder.flavor(hwid);
         }
 
-        String nid = opts.getNetworkId();
-        if (Util.fixEmpty(nid) != null) {
-            List<String> networks = selectNetworkIds(openstack, nid);
+        if (networks != null) {
             LOGGER.fine("Setting networks to " + networks);
             builder.networks(networks);
         }
@@ -323,10 +437,10 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
             builder.availabilityZone(az);
         }
 
+        String rootUrl = Util.fixNull(Jenkins.get().getRootUrl());
+        UserDataVariableResolver resolver = new UserDataVariableResolver(rootUrl, serverName, labelString, opts);
         @CheckForNull String userDataText = getUserData();
         if (userDataText != null) {
-            String rootUrl = Util.fixNull(Jenkins.get().getRootUrl());
-            UserDataVariableResolver resolver = new UserDataVariableResolver(rootUrl, serverName, labelString, opts);
             String content = Util.replaceMacro(userDataText, resolver);
             assert content != null;
             LOGGER.fine("Sending user-data:\n" + content);
@@ -336,10 +450,21 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         Boolean configDrive = opts.getConfigDrive();
         if (configDrive != null) {
             builder.configDrive(configDrive);
+            if (configDrive && opts.getLauncherFactory() instanceof LauncherFactory.JNLP) {
+                // Readable as soon as the drive is mounted, no need to reach metadata service
+                builder.addPersonality(LauncherFactory.JNLP.CONFIG_DRIVE_FILE, Util.replaceMacro(
+                        "JENKINS_URL=${JENKINS_URL}\nSLAVE_JNLP_URL=${SLAVE_JNLP_URL}\nSLAVE_JNLP_SECRET=${SLAVE_JNLP_SECRET}\n",
+                        resolver
+                ));
+            }
         }
 
-        Server server = openstack.bootAndWaitActive(builder, opts.getStartTimeout());
+        return builder;
+    }
 
+    private @Nonnull Server finishProvisioning(@Nonnull Openstack openstack, @Nonnull Server server, @Nonnull SlaveOptions opts) {
+        final String serverName = server.getName();
+        final BootSource bootSource = opts.getBootSource();
         try {
             if (bootSource != null) {
                 bootSource.afterProvisioning(server, openstack);
@@ -364,8 +489,8 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
 
     // Try harder to ensure node name is unique
     private String getServerName() {
-        CloudStatistics cs = CloudStatistics.get();
-        next_number: for (;;) {
+        ActivityIndex activities = ActivityIndex.get();
+        for (;;) {
             // Using static counter to ensure colliding template names (between clouds) will not cause a clash
             String nameCandidate = getName() + "-" + nodeCounter.getAndIncrement();
 
@@ -374,11 +499,8 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
 
             // Collide with node being provisioned (at this point this plugin does not assign final name before launch
             // is completed) or recently used name (just to avoid confusion).
-            for (ProvisioningActivity provisioningActivity : cs.getActivities()) {
-                if (nameCandidate.equals(provisioningActivity.getId().getNodeName())) {
-                    continue next_number;
-                }
-            }
+            if (activities.hasNodeName(nameCandidate)) continue;
+
             return nameCandidate;
         }
     }
@@ -475,8 +597,15 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     }
 
     /*package for testing*/ List<? extends Server> getRunningNodes() {
+        return getRunningNodes(cloud.getOpenstack().getRunningNodes());
+    }
+
+    /**
+     * Servers provisioned from this template out of a listing of cloud servers already obtained.
+     */
+    /*package*/ List<? extends Server> getRunningNodes(@Nonnull List<? extends Server> cloudServers) {
         List<Server> tmplt = new ArrayList<>();
-        for (Server server : cloud.getOpenstack().getRunningNodes()) {
+        for (Server server : cloudServers) {
             if (hasProvisioned(server)) {
                 tmplt.add(server);
             }
@@ -488,19 +617,7 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
      * Return the number of active nodes provisioned using this template.
      */
     /*package*/ int getAvailableNodesTotal() {
-        int totalServers = 0;
-
-        for (JCloudsComputer computer : JCloudsComputer.getAll()) {
-            ProvisioningActivity.Id cid = computer.getId();
-            // Not this template
-            if (!name.equals(cid.getTemplateName()) || !cloud.name.equals(cid.getCloudName())) continue;
-
-            // Not active
-            if (!computer.isIdle() || computer.isPendingDelete() || computer.isUserOffline()) continue;
-
-            totalServers++;
-        }
-        return totalServers;
+        return TemplateCensus.get().getAvailable(cloud.name, name);
     }
 
     @Override
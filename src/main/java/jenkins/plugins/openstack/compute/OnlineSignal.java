@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wake up provisioning waiting for a node that came online.
+ *
+ * Nodes connecting on their own are added to Jenkins while still provisioning, so the provisioning can wait for them
+ * to connect instead of polling.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class OnlineSignal extends ComputerListener {
+    private static final ConcurrentMap<String, CountDownLatch> WAITING = new ConcurrentHashMap<>();
+
+    /**
+     * Wait for given time or until the node comes online, whichever happens first.
+     */
+    /*package*/ static void await(@Nonnull JCloudsSlave node, long millis) throws InterruptedException {
+        if (millis <= 0) return;
+
+        String name = node.getNodeName();
+        CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch existing = WAITING.putIfAbsent(name, latch);
+        if (existing != null) {
+            latch = existing;
+        }
+        try {
+            if (node.getChannel() != null) return; // Connected before registered
+            latch.await(millis, TimeUnit.MILLISECONDS);
+        } finally {
+            WAITING.remove(name, latch);
+        }
+    }
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        if (!(c instanceof JCloudsComputer)) return;
+
+        CountDownLatch latch = WAITING.get(c.getName());
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+}
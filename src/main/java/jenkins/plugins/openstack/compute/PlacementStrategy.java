@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.openstack4j.model.compute.Flavor;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decide which of the templates capable of serving a label are provisioned first.
+ */
+@Restricted(NoExternalUse.class)
+public abstract class PlacementStrategy extends AbstractDescribableImpl<PlacementStrategy> implements Serializable {
+    private static final long serialVersionUID = -2786193262335931302L;
+
+    /**
+     * Order the servers to provision.
+     *
+     * @param candidates Templates capable of provisioning, in declaration order.
+     * @return Template for every server that can be provisioned, preferred first.
+     */
+    public abstract @Nonnull List<JCloudsSlaveTemplate> place(@Nonnull List<Candidate> candidates);
+
+    /**
+     * Whether {@link Candidate#getFlavor()} is needed.
+     */
+    public boolean isFlavorAware() {
+        return false;
+    }
+
+    /**
+     * Template eligible for provisioning.
+     */
+    public static final class Candidate {
+        private final @Nonnull JCloudsSlaveTemplate template;
+        private final int capacity;
+        private final int running;
+        private final int executors;
+        private final @CheckForNull Flavor flavor;
+
+        /*package*/ Candidate(@Nonnull JCloudsSlaveTemplate template, int capacity, int running, int executors, @CheckForNull Flavor flavor) {
+            this.template = template;
+            this.capacity = capacity;
+            this.running = running;
+            this.executors = Math.max(1, executors);
+            this.flavor = flavor;
+        }
+
+        public @Nonnull JCloudsSlaveTemplate getTemplate() {
+            return template;
+        }
+
+        /**
+         * Number of servers that can be provisioned from the template.
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Number of servers of the template currently running.
+         */
+        public int getRunning() {
+            return running;
+        }
+
+        public int getExecutors() {
+            return executors;
+        }
+
+        /**
+         * Flavor of the template, if known and requested by {@link #isFlavorAware()}.
+         */
+        public @CheckForNull Flavor getFlavor() {
+            return flavor;
+        }
+
+        /**
+         * vCPUs per executor, or {@link Double#MAX_VALUE} when unknown.
+         */
+        public double getCpuPerExecutor() {
+            return flavor == null ? Double.MAX_VALUE : (double) flavor.getVcpus() / executors;
+        }
+
+        /**
+         * RAM per executor, or {@link Double#MAX_VALUE} when unknown.
+         */
+        public double getRamPerExecutor() {
+            return flavor == null ? Double.MAX_VALUE : (double) flavor.getRam() / executors;
+        }
+    }
+
+    /**
+     * Exhaust templates in declaration order.
+     */
+    public static final class FirstFit extends PlacementStrategy {
+        private static final long serialVersionUID = 6591236640463924834L;
+
+        public static final PlacementStrategy FIRST_FIT = new FirstFit();
+
+        @DataBoundConstructor
+        public FirstFit() {}
+
+        @Override
+        public @Nonnull List<JCloudsSlaveTemplate> place(@Nonnull List<Candidate> candidates) {
+            List<JCloudsSlaveTemplate> out = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                for (int i = 0; i < candidate.getCapacity(); i++) {
+                    out.add(candidate.getTemplate());
+                }
+            }
+            return out;
+        }
+
+        @Override public boolean equals(Object obj) {
+            return obj != null && getClass() == obj.getClass();
+        }
+
+        @Override public int hashCode() {
+            return 31;
+        }
+
+        private Object readResolve() {
+            return FIRST_FIT;
+        }
+
+        @Extension(ordinal = 10) @Symbol("firstFit")
+        public static final class Desc extends Descriptor<PlacementStrategy> {
+            @Override public @Nonnull String getDisplayName() {
+                return "First fit - templates in declaration order";
+            }
+        }
+    }
+
+    /**
+     * Prefer templates with the least vCPUs and RAM per executor.
+     */
+    public static final class CheapestFit extends PlacementStrategy {
+        private static final long serialVersionUID = -5163578385366858146L;
+
+        @DataBoundConstructor
+        public CheapestFit() {}
+
+        @Override
+        public boolean isFlavorAware() {
+            return true;
+        }
+
+        @Override
+        public @Nonnull List<JCloudsSlaveTemplate> place(@Nonnull List<Candidate> candidates) {
+            List<Candidate> sorted = new ArrayList<>(candidates);
+            // Stable so declaration order breaks ties
+            sorted.sort(Comparator.comparingDouble(Candidate::getCpuPerExecutor).thenComparingDouble(Candidate::getRamPerExecutor));
+            return FirstFit.FIRST_FIT.place(sorted);
+        }
+
+        @Override public boolean equals(Object obj) {
+            return obj != null && getClass() == obj.getClass();
+        }
+
+        @Override public int hashCode() {
+            return 37;
+        }
+
+        @Extension(ordinal = 5) @Symbol("cheapestFit")
+        public static final class Desc extends Descriptor<PlacementStrategy> {
+            @Override public @Nonnull String getDisplayName() {
+                return "Cheapest fit - least vCPUs and RAM per executor first";
+            }
+        }
+    }
+
+    /**
+     * Distribute servers evenly across templates, least utilized first.
+     */
+    public static final class Spread extends PlacementStrategy {
+        private static final long serialVersionUID = 4361716437219556436L;
+
+        @DataBoundConstructor
+        public Spread() {}
+
+        @Override
+        public @Nonnull List<JCloudsSlaveTemplate> place(@Nonnull List<Candidate> candidates) {
+            int[] running = new int[candidates.size()];
+            int[] remaining = new int[candidates.size()];
+            int total = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                running[i] = candidates.get(i).getRunning();
+                remaining[i] = candidates.get(i).getCapacity();
+                total += remaining[i];
+            }
+
+            List<JCloudsSlaveTemplate> out = new ArrayList<>(total);
+            while (out.size() < total) {
+                int least = -1;
+                for (int i = 0; i < running.length; i++) {
+                    if (remaining[i] > 0 && (least == -1 || running[i] < running[least])) {
+                        least = i;
+                    }
+                }
+                out.add(candidates.get(least).getTemplate());
+                running[least]++;
+                remaining[least]--;
+            }
+            return out;
+        }
+
+        @Override public boolean equals(Object obj) {
+            return obj != null && getClass() == obj.getClass();
+        }
+
+        @Override public int hashCode() {
+            return 41;
+        }
+
+        @Extension(ordinal = 1) @Symbol("spread")
+        public static final class Desc extends Descriptor<PlacementStrategy> {
+            @Override public @Nonnull String getDisplayName() {
+                return "Spread - least utilized templates first";
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.AbsoluteLimit;
+import org.openstack4j.model.compute.Flavor;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remaining project quota of a cloud.
+ *
+ * Limits and usage are read from OpenStack periodically and updated locally as servers are planned in between, so
+ * provisioning does not request servers that can not fit.
+ */
+@Restricted(NoExternalUse.class)
+public final class QuotaTracker {
+    private static final Logger LOGGER = Logger.getLogger(QuotaTracker.class.getName());
+
+    /*package*/ static final long TTL = Long.getLong(QuotaTracker.class.getName() + ".ttl", TimeUnit.MINUTES.toMillis(1));
+
+    private @CheckForNull Headroom headroom; // Guarded by this
+    private @Nonnull Map<String, Flavor> flavors = Collections.emptyMap(); // Guarded by this
+    private long fetched; // Guarded by this
+
+    /**
+     * Remaining quota, to be consumed by the caller for planning.
+     */
+    public synchronized @Nonnull Headroom getHeadroom(@Nonnull Openstack os) {
+        refresh(os);
+        assert headroom != null;
+        return headroom.copy();
+    }
+
+    /**
+     * Remaining quota as last read and consumed since, without talking to OpenStack.
+     *
+     * @return null if not read yet.
+     */
+    public synchronized @CheckForNull Headroom getCachedHeadroom() {
+        return headroom == null ? null : headroom.copy();
+    }
+
+    public synchronized @Nonnull Map<String, Flavor> getFlavors(@Nonnull Openstack os) {
+        refresh(os);
+        return flavors;
+    }
+
+    /**
+     * Account a server about to be provisioned.
+     */
+    public synchronized void consume(@CheckForNull Flavor flavor, boolean fip) {
+        if (headroom != null) {
+            headroom.take(flavor, fip);
+        }
+    }
+
+    /**
+     * Force reading the quota next time as it was likely freed.
+     */
+    public synchronized void invalidate() {
+        fetched = 0;
+    }
+
+    private void refresh(@Nonnull Openstack os) {
+        long now = System.currentTimeMillis();
+        if (headroom != null && now - fetched < TTL) return;
+
+        fetched = now;
+        try {
+            flavors = os.getFlavors();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Unable to list flavors", ex);
+        }
+        try {
+            headroom = Headroom.of(os.getAbsoluteLimits());
+        } catch (RuntimeException ex) {
+            // Limits might not be permitted to be read - do not restrict provisioning then
+            LOGGER.log(Level.FINE, "Unable to read absolute limits", ex);
+            headroom = Headroom.UNLIMITED.copy();
+        }
+    }
+
+    /**
+     * Resources available for new servers.
+     */
+    public static final class Headroom {
+        private static final Headroom UNLIMITED = new Headroom(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        private long instances;
+        private long cores;
+        private long ram;
+        private long fips;
+
+        /*package*/ Headroom(long instances, long cores, long ram, long fips) {
+            this.instances = instances;
+            this.cores = cores;
+            this.ram = ram;
+            this.fips = fips;
+        }
+
+        private static @Nonnull Headroom of(@CheckForNull AbsoluteLimit limit) {
+            if (limit == null) return UNLIMITED.copy();
+            return new Headroom(
+                    remaining(limit.getMaxTotalInstances(), limit.getTotalInstancesUsed()),
+                    remaining(limit.getMaxTotalCores(), limit.getTotalCoresUsed()),
+                    remaining(limit.getMaxTotalRAMSize(), limit.getTotalRAMUsed()),
+                    // Not reported reliably when Neutron manages floating IPs
+                    limit.getMaxTotalFloatingIps() <= 0 ? Long.MAX_VALUE : remaining(limit.getMaxTotalFloatingIps(), limit.getTotalFloatingIpsUsed())
+            );
+        }
+
+        private static long remaining(int max, int used) {
+            if (max < 0) return Long.MAX_VALUE; // Unlimited
+            return Math.max(0, max - Math.max(0, used));
+        }
+
+        /**
+         * Consume the resources of a server if it fits.
+         *
+         * @param flavor Flavor of the server, null if not known.
+         * @param fip Whether the server gets floating IP allocated.
+         * @return true if it fits.
+         */
+        public boolean take(@CheckForNull Flavor flavor, boolean fip) {
+            int vcpus = flavor == null ? 0 : flavor.getVcpus();
+            int mem = flavor == null ? 0 : flavor.getRam();
+            if (instances < 1 || cores < vcpus || ram < mem || (fip && fips < 1)) return false;
+
+            instances--;
+            cores -= vcpus;
+            ram -= mem;
+            if (fip) fips--;
+            return true;
+        }
+
+        private @Nonnull Headroom copy() {
+            return new Headroom(instances, cores, ram, fips);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("instances=%d, cores=%d, ram=%d, fips=%d", instances, cores, ram, fips);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Time it takes for servers of a template to get ready for launching once ACTIVE.
+ *
+ * Used to schedule readiness probes so quick templates are handed over promptly while slow ones are not probed in vain.
+ */
+@Restricted(NoExternalUse.class)
+public final class ReadinessStatistics {
+
+    /*package*/ static final int SAMPLES = 20;
+    /**
+     * Samples needed before the observations are trusted.
+     */
+    /*package*/ static final int MIN_SAMPLES = 3;
+    /*package*/ static final long DEFAULT_PROBE_INTERVAL = 2000;
+    /*package*/ static final long MIN_PROBE_INTERVAL = 500;
+    /*package*/ static final long MAX_PROBE_INTERVAL = 15000;
+
+    private static final ConcurrentMap<String, ReadinessStatistics> ALL = new ConcurrentHashMap<>();
+
+    // Options of the template the samples were observed with, null if not known
+    private final @CheckForNull SlaveOptions options;
+    private final long[] samples = new long[SAMPLES]; // Guarded by this
+    private int count; // Guarded by this
+    private int next; // Guarded by this
+
+    public static @Nonnull ReadinessStatistics of(@Nonnull String cloud, @Nonnull String template) {
+        return ALL.computeIfAbsent(key(cloud, template), k -> new ReadinessStatistics(null));
+    }
+
+    /**
+     * Forget the statistics of templates of the cloud that were removed or that have their options changed.
+     */
+    /*package*/ static void configured(@Nonnull String cloud, @Nonnull List<JCloudsSlaveTemplate> templates) {
+        Map<String, SlaveOptions> current = new HashMap<>();
+        for (JCloudsSlaveTemplate template : templates) {
+            current.put(key(cloud, template.getName()), template.getEffectiveSlaveOptions());
+        }
+
+        String prefix = cloud + "/";
+        ALL.entrySet().removeIf(e -> e.getKey().startsWith(prefix)
+                && !Objects.equals(e.getValue().options, current.get(e.getKey()))
+        );
+        for (Map.Entry<String, SlaveOptions> e : current.entrySet()) {
+            ALL.computeIfAbsent(e.getKey(), k -> new ReadinessStatistics(e.getValue()));
+        }
+    }
+
+    private static @Nonnull String key(@Nonnull String cloud, @Nonnull String template) {
+        return cloud + "/" + template;
+    }
+
+    /*package for testing*/ ReadinessStatistics() {
+        this(null);
+    }
+
+    private ReadinessStatistics(@CheckForNull SlaveOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Record the server got ready in given time since it was ACTIVE.
+     *
+     * @param millis Estimate of the time the server got ready, not the time it was detected to be.
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % SAMPLES;
+        if (count < SAMPLES) count++;
+    }
+
+    /**
+     * Delay before the first probe. No server got ready sooner than this recently.
+     */
+    public long getFirstProbeDelay() {
+        long[] s = sorted();
+        if (s.length < MIN_SAMPLES) return 0;
+        return s[0] * 4 / 5;
+    }
+
+    /**
+     * Delay before the next probe given how long the server has been waiting.
+     *
+     * Servers are probed often around the time they typically get ready and less so the further the wait is from it,
+     * backing off for servers that are late.
+     */
+    public long getProbeInterval(long waiting) {
+        long[] s = sorted();
+        if (s.length < MIN_SAMPLES) return DEFAULT_PROBE_INTERVAL;
+
+        long median = s[s.length / 2];
+        long interval = Math.abs(median - waiting) / 4;
+        return Math.max(MIN_PROBE_INTERVAL, Math.min(MAX_PROBE_INTERVAL, interval));
+    }
+
+    /**
+     * Seconds to wait between the attempts of the launcher after the machine was considered ready.
+     */
+    public int getRetryWaitTime() {
+        long[] s = sorted();
+        if (s.length < MIN_SAMPLES) return 15;
+
+        long spread = s[s.length - 1] - s[0];
+        return (int) Math.max(2, Math.min(15, spread / 1000 / 4));
+    }
+
+    /**
+     * Launcher attempts spanning roughly the same time regardless of the wait time.
+     */
+    public int getMaxNumRetries() {
+        return Math.max(5, 75 / getRetryWaitTime());
+    }
+
+    private synchronized long[] sorted() {
+        long[] s = Arrays.copyOf(samples, count);
+        Arrays.sort(s);
+        return s;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Result;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.CauseOfInterruption;
+import jenkins.plugins.openstack.compute.internal.DestroyMachine;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
+import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.api.exceptions.ClientResponseException;
+import org.openstack4j.api.exceptions.StatusCode;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.storage.block.Volume;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Difference between the state Jenkins expects and the state observed in single OpenStack cloud.
+ *
+ * The plan is computed from a single snapshot of the cloud and consists of:
+ *
+ * - Out-of-scope servers: servers that outlived the scope they were created for.
+ * - Zombies: Jenkins nodes whose servers no longer run.
+ * - Orphans: resources allocated by the plugin nothing uses anymore - floating IPs and volumes.
+ *
+ * Computation has no side effects, so the plan can be inspected before it is {@link #execute(JCloudsCloud)}d.
+ */
+@Restricted(NoExternalUse.class)
+public final class ReconciliationPlan {
+    private static final Logger LOGGER = Logger.getLogger(ReconciliationPlan.class.getName());
+
+    /**
+     * Number of actions performed concurrently.
+     */
+    private static final int CONCURRENCY = Integer.getInteger(ReconciliationPlan.class.getName() + ".concurrency", 8);
+
+    /**
+     * Minimal age of unattached volume to be considered leaked, not to collide with volumes of servers being booted.
+     */
+    private static final long VOLUME_GRACE_PERIOD = Long.getLong(
+            ReconciliationPlan.class.getName() + ".volumeGracePeriod", TimeUnit.MINUTES.toMillis(30)
+    );
+
+    private final @Nonnull String cloudName;
+    private final long created = System.currentTimeMillis();
+    private final @Nonnull List<ServerInfo> inScope;
+    private final @Nonnull List<Action> actions;
+    private final @Nonnull List<String> freedFips;
+    private final @Nonnull List<String> freedVolumes;
+
+    private ReconciliationPlan(
+            @Nonnull String cloudName, @Nonnull List<ServerInfo> inScope, @Nonnull List<Action> actions,
+            @Nonnull List<String> freedFips, @Nonnull List<String> freedVolumes
+    ) {
+        this.cloudName = cloudName;
+        this.inScope = Collections.unmodifiableList(inScope);
+        this.actions = Collections.unmodifiableList(actions);
+        this.freedFips = Collections.unmodifiableList(freedFips);
+        this.freedVolumes = Collections.unmodifiableList(freedVolumes);
+    }
+
+    /**
+     * Compute the plan.
+     *
+     * @param servers Servers running in the cloud.
+     * @param computers Jenkins computers of the cloud.
+     * @param freeFips Floating IPs not associated with any server.
+     * @param stillFips Floating IPs that were free on previous reconciliation.
+     * @param freeVolumes Volumes created by the plugin not attached to any server.
+     * @param stillVolumes Volumes that were free on previous reconciliation.
+     */
+    /*package*/ static @Nonnull ReconciliationPlan compute(
+            @Nonnull String cloudName,
+            @Nonnull List<Server> servers,
+            @Nonnull List<JCloudsComputer> computers,
+            @Nonnull Collection<String> freeFips,
+            @Nonnull Collection<String> stillFips,
+            @Nonnull Collection<Volume> freeVolumes,
+            @Nonnull Collection<String> stillVolumes
+    ) {
+        List<Action> actions = new ArrayList<>();
+
+        // Plan is retained until the next reconciliation, keep only what is needed of the servers
+        List<ServerInfo> inScope = new ArrayList<>();
+        ActivityIndex activities = ActivityIndex.get();
+        for (Server server : servers) {
+            ServerScope scope = ServerScope.extract(server);
+            if (scope.isOutOfScope(server, activities)) {
+                actions.add(new OutOfScope(cloudName, ServerInfo.of(server), scope));
+            } else {
+                inScope.add(ServerInfo.of(server));
+            }
+        }
+
+        Map<String, JCloudsComputer> zombies = new HashMap<>();
+        for (JCloudsComputer computer : computers) {
+            JCloudsSlave node = computer.getNode();
+            if (node != null) {
+                zombies.put(node.getServerId(), computer);
+            }
+        }
+        // Eliminate computers we have servers for
+        for (ServerInfo server : inScope) {
+            zombies.remove(server.getId());
+        }
+        for (Map.Entry<String, JCloudsComputer> e : zombies.entrySet()) {
+            actions.add(new Zombie(e.getKey(), e.getValue()));
+        }
+
+        List<String> freed = new ArrayList<>();
+        for (String fip : freeFips) {
+            if (stillFips.contains(fip)) { // Free on 2 checks
+                actions.add(new OrphanedFip(fip));
+            } else {
+                freed.add(fip);
+            }
+        }
+
+        List<String> freedVolumes = new ArrayList<>();
+        long leakedBefore = System.currentTimeMillis() - VOLUME_GRACE_PERIOD;
+        for (Volume volume : freeVolumes) {
+            Date created = volume.getCreated();
+            if (stillVolumes.contains(volume.getId()) && created != null && created.getTime() < leakedBefore) {
+                actions.add(new OrphanedVolume(volume));
+            } else {
+                freedVolumes.add(volume.getId());
+            }
+        }
+
+        return new ReconciliationPlan(cloudName, inScope, actions, freed, freedVolumes);
+    }
+
+    public @Nonnull String getCloudName() {
+        return cloudName;
+    }
+
+    public @Nonnull Date getCreated() {
+        return new Date(created);
+    }
+
+    /**
+     * Servers kept running.
+     */
+    public @Nonnull List<ServerInfo> getInScope() {
+        return inScope;
+    }
+
+    public @Nonnull List<Action> getActions() {
+        return actions;
+    }
+
+    public @Nonnull <T extends Action> List<T> getActions(@Nonnull Class<T> type) {
+        List<T> out = new ArrayList<>();
+        for (Action action : actions) {
+            if (type.isInstance(action)) {
+                out.add(type.cast(action));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Floating IPs seen free for the first time, to be confirmed on next reconciliation.
+     */
+    public @Nonnull List<String> getFreedFips() {
+        return freedFips;
+    }
+
+    /**
+     * Volumes seen free, to be confirmed on next reconciliation once their grace period is over.
+     */
+    public @Nonnull List<String> getFreedVolumes() {
+        return freedVolumes;
+    }
+
+    /**
+     * Perform all actions in batches of {@link #CONCURRENCY}.
+     *
+     * @return Number of actions that fixed the problem.
+     */
+    /*package*/ int execute(@Nonnull JCloudsCloud cloud) throws InterruptedException {
+        int fixed = 0;
+        for (int from = 0; from < actions.size(); from += CONCURRENCY) {
+            List<Action> batch = actions.subList(from, Math.min(from + CONCURRENCY, actions.size()));
+            List<Future<Boolean>> futures = new ArrayList<>(batch.size());
+            for (Action action : batch) {
+                futures.add(Computer.threadPoolForRemoting.submit(() -> {
+                    try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+                        return action.perform(cloud);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        fixed++;
+                    }
+                } catch (ExecutionException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to " + batch.get(i), ex.getCause());
+                }
+            }
+        }
+        return fixed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Reconciliation of ").append(cloudName).append(" at ").append(getCreated()).append('\n');
+        sb.append("Servers in scope: ").append(inScope.size()).append('\n');
+        sb.append("Out of scope: ").append(getActions(OutOfScope.class).size()).append('\n');
+        sb.append("Zombies: ").append(getActions(Zombie.class).size()).append('\n');
+        sb.append("Orphans: ").append(getActions(Orphan.class).size()).append('\n');
+        sb.append("Leaked volumes: ").append(getActions(OrphanedVolume.class).size()).append('\n');
+        sb.append("Floating IPs pending confirmation: ").append(freedFips).append('\n');
+        sb.append("Volumes pending confirmation: ").append(freedVolumes).append('\n');
+        for (Action action : actions) {
+            sb.append("- ").append(action).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Single step to get the cloud in sync.
+     */
+    public static abstract class Action {
+        /**
+         * @return true if the problem was fixed, false if it turned out there was nothing to do.
+         */
+        /*package*/ abstract boolean perform(@Nonnull JCloudsCloud cloud) throws Exception;
+    }
+
+    /**
+     * Server that should no longer run.
+     */
+    public static final class OutOfScope extends Action {
+        private final @Nonnull String cloudName;
+        private final @Nonnull ServerInfo server;
+        private final @Nonnull ServerScope scope;
+
+        private OutOfScope(@Nonnull String cloudName, @Nonnull ServerInfo server, @Nonnull ServerScope scope) {
+            this.cloudName = cloudName;
+            this.server = server;
+            this.scope = scope;
+        }
+
+        public @Nonnull ServerInfo getServer() {
+            return server;
+        }
+
+        @Override
+        /*package*/ boolean perform(@Nonnull JCloudsCloud cloud) {
+            LOGGER.info("Server " + server.getName() + " run out of its scope " + scope + ". Terminating: " + server);
+            AsyncResourceDisposer.get().dispose(new DestroyMachine(cloudName, server.getId()));
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "destroy server " + server.getName() + " (" + server.getId() + ") out of its scope " + scope;
+        }
+    }
+
+    /**
+     * Node without server.
+     */
+    public static final class Zombie extends Action {
+        private final @Nonnull String serverId;
+        private final @Nonnull JCloudsComputer computer;
+
+        private Zombie(@Nonnull String serverId, @Nonnull JCloudsComputer computer) {
+            this.serverId = serverId;
+            this.computer = computer;
+        }
+
+        public @Nonnull String getServerId() {
+            return serverId;
+        }
+
+        public @Nonnull JCloudsComputer getComputer() {
+            return computer;
+        }
+
+        @Override
+        /*package*/ boolean perform(@Nonnull JCloudsCloud cloud) throws Exception {
+            try { // Double check server does not exist before interrupting jobs
+                Server explicitLookup = cloud.getOpenstack().getServerById(serverId);
+                if (Openstack.isOccupied(explicitLookup)) {
+                    LOGGER.severe("Reconciliation incorrectly detected orphaned computer for " + explicitLookup);
+                    return false; // Do not kill it
+                }
+            } catch (NoSuchElementException expected) {
+                // Gone as expected
+            }
+
+            String msg = "OpenStack server (" + serverId + ") is not running for computer " + computer.getName() + ". Terminating!";
+            LOGGER.warning(msg);
+            CauseOfInterruption coi = new JCloudsCleanupThread.MessageInterruption(msg);
+            for (Executor e : computer.getExecutors()) {
+                e.interrupt(Result.ABORTED, coi);
+            }
+            for (Executor e : computer.getOneOffExecutors()) {
+                e.interrupt(Result.ABORTED, coi);
+            }
+            computer.deleteSlave();
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "terminate node " + computer.getName() + " without server " + serverId;
+        }
+    }
+
+    /**
+     * Resource allocated by the plugin that is no longer used.
+     */
+    public static abstract class Orphan extends Action {}
+
+    public static final class OrphanedFip extends Orphan {
+        private final @Nonnull String fip;
+        private volatile boolean forbidden = false;
+
+        private OrphanedFip(@Nonnull String fip) {
+            this.fip = fip;
+        }
+
+        public @Nonnull String getFip() {
+            return fip;
+        }
+
+        /**
+         * The floating IP can not be released by the plugin.
+         */
+        public boolean isForbidden() {
+            return forbidden;
+        }
+
+        @Override
+        /*package*/ boolean perform(@Nonnull JCloudsCloud cloud) {
+            try {
+                cloud.getOpenstack().destroyFip(fip);
+                return true;
+            } catch (ClientResponseException ex) {
+                // The tenant is probably reusing pre-allocated FIPs without permission to (de)allocate new.
+                // https://github.com/jenkinsci/openstack-cloud-plugin/issues/66#issuecomment-207296059
+                if (ex.getStatusCode() == StatusCode.FORBIDDEN) {
+                    forbidden = true;
+                    return false;
+                }
+                throw ex;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "release leaked floating IP " + fip;
+        }
+    }
+
+    public static final class OrphanedVolume extends Orphan {
+        private final @Nonnull String id;
+        private final @Nonnull String name;
+
+        private OrphanedVolume(@Nonnull Volume volume) {
+            this.id = volume.getId();
+            this.name = String.valueOf(volume.getName());
+        }
+
+        public @Nonnull String getId() {
+            return id;
+        }
+
+        @Override
+        /*package*/ boolean perform(@Nonnull JCloudsCloud cloud) {
+            cloud.getOpenstack().destroyVolume(id);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "delete leaked volume " + name + " (" + id + ")";
+        }
+    }
+}
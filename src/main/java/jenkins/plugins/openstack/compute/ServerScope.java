@@ -26,7 +26,6 @@ package jenkins.plugins.openstack.compute;
 import hudson.model.Job;
 import hudson.model.Run;
 import jenkins.model.Jenkins;
-import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -143,6 +142,13 @@ public abstract class ServerScope {
      */
     abstract public boolean isOutOfScope(@Nonnull Server server);
 
+    /**
+     * Determine whether the server is out of scope, looking up provisioning activities in the index given.
+     */
+    /*package*/ boolean isOutOfScope(@Nonnull Server server, @Nonnull ActivityIndex activities) {
+        return isOutOfScope(server);
+    }
+
     /**
      * Server is scoped to Jenkins node of the name equal to the specifier.
      *
@@ -181,26 +187,31 @@ public abstract class ServerScope {
 
         @Override
         public boolean isOutOfScope(@Nonnull Server server) {
+            return isOutOfScope(server, ActivityIndex.get());
+        }
+
+        @Override
+        /*package*/ boolean isOutOfScope(@Nonnull Server server, @Nonnull ActivityIndex activities) {
             if (computerExists()) return false;
 
-            if (cloudStatsFingerprint != null) {
-                // The node may be provisioned or deleted at the moment - do not interfere
-                for (ProvisioningActivity pa : CloudStatistics.get().getActivities()) {
-                    // Note the node name might not have been assigned yet so using fingerprint instead
-                    if (pa.getId().getFingerprint() == cloudStatsFingerprint) {
-                        switch (pa.getCurrentPhase()) {
-                            case PROVISIONING:
-                                return false; // Node not yet created
-                            case LAUNCHING:
-                            case OPERATING:
-                                LOGGER.warning("Node does not exist for " + pa.getCurrentPhase() + " " + specifier);
-                                return false;
-                            case COMPLETED:
-                                return true;
-                        }
-                        assert false: "Unreachable";
-                    }
+            return isOutOfScope(server, cloudStatsFingerprint == null ? null : activities.get(cloudStatsFingerprint));
+        }
+
+        private boolean isOutOfScope(@Nonnull Server server, @CheckForNull ProvisioningActivity pa) {
+            // The node may be provisioned or deleted at the moment - do not interfere
+            // Note the node name might not have been assigned yet so using fingerprint instead
+            if (pa != null) {
+                switch (pa.getCurrentPhase()) {
+                    case PROVISIONING:
+                        return false; // Node not yet created
+                    case LAUNCHING:
+                    case OPERATING:
+                        LOGGER.warning("Node does not exist for " + pa.getCurrentPhase() + " " + specifier);
+                        return false;
+                    case COMPLETED:
+                        return true;
                 }
+                assert false: "Unreachable";
             }
 
             Date created = server.getCreated();
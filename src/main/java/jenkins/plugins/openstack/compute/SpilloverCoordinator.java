@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.model.Label;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Distribute workload among OpenStack clouds opted in for spillover, based on their health.
+ *
+ * Jenkins asks clouds in declaration order, each getting the workload the previous ones did not take. A cloud only
+ * takes its weighted share among itself and the clouds after it, so the workload is split in proportion to the
+ * weights overall. Weight reflects recent provisioning latency, failure rate, remaining quota and instance caps.
+ *
+ * The weights are computed from what is already tracked locally - boot profiles, the outcomes recorded by the
+ * {@link CircuitBreaker}, the quota cached by {@link QuotaTracker} and the servers seen by the last reconciliation -
+ * so no cloud is asked during provisioning.
+ */
+@Restricted(NoExternalUse.class)
+public final class SpilloverCoordinator {
+    private static final Logger LOGGER = Logger.getLogger(SpilloverCoordinator.class.getName());
+
+    /**
+     * Weight of a cloud failing all provisioning attempts, so it is still probed occasionally.
+     */
+    /*package*/ static final double MIN_SUCCESS_RATE = 0.05;
+
+    private SpilloverCoordinator() {}
+
+    /**
+     * Part of the workload the cloud should provision.
+     */
+    /*package*/ static int share(@Nonnull JCloudsCloud cloud, @CheckForNull Label label, int excessWorkload) {
+        if (!cloud.isSpillover()) return excessWorkload;
+
+        List<JCloudsCloud> clouds = JCloudsCloud.getClouds();
+        int index = clouds.indexOf(cloud);
+        if (index == -1) return excessWorkload;
+
+        List<JCloudsCloud> participants = new ArrayList<>();
+        participants.add(cloud);
+        for (JCloudsCloud c : clouds.subList(index + 1, clouds.size())) {
+            if (c.isSpillover() && c.canProvision(label)) {
+                participants.add(c);
+            }
+        }
+        if (participants.size() == 1) return excessWorkload; // Nowhere to spill
+
+        double[] weights = weights(participants, label, excessWorkload);
+        double rest = 0;
+        for (int i = 1; i < weights.length; i++) {
+            rest += weights[i];
+        }
+        int share = share(excessWorkload, weights[0], rest, ThreadLocalRandom.current());
+        if (share < excessWorkload) {
+            LOGGER.fine(String.format(
+                    "Cloud %s taking %d of %d for %s, weights %s", cloud.name, share, excessWorkload, label, Arrays.toString(weights)
+            ));
+        }
+        return share;
+    }
+
+    /*package*/ static int share(int excessWorkload, double own, double rest, @Nonnull Random random) {
+        if (own + rest <= 0) return excessWorkload; // Everything is broken, do not hold the workload back
+
+        double exact = excessWorkload * own / (own + rest);
+        int share = (int) Math.floor(exact);
+        // Round randomly not to starve the others when the workload comes in small portions
+        if (random.nextDouble() < exact - share) {
+            share++;
+        }
+        return share;
+    }
+
+    private static @Nonnull double[] weights(@Nonnull List<JCloudsCloud> clouds, @CheckForNull Label label, int excessWorkload) {
+        Long[] latencies = new Long[clouds.size()];
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < clouds.size(); i++) {
+            latencies[i] = getLatency(clouds.get(i));
+            if (latencies[i] != null) {
+                fastest = Math.min(fastest, latencies[i]);
+            }
+        }
+
+        double[] weights = new double[clouds.size()];
+        for (int i = 0; i < clouds.size(); i++) {
+            JCloudsCloud cloud = clouds.get(i);
+            double latency = latencies[i] == null || latencies[i] == 0 ? 1 : (double) fastest / latencies[i];
+            weights[i] = hasHeadroom(cloud) ? latency * getSuccessRate(cloud) * getCapacity(cloud, label, excessWorkload) : 0;
+        }
+        return weights;
+    }
+
+    /**
+     * Median of typical provisioning times of cloud templates.
+     */
+    private static @CheckForNull Long getLatency(@Nonnull JCloudsCloud cloud) {
+        List<Long> medians = new ArrayList<>();
+        for (Map.Entry<String, BootProfile> e : BootProfiles.get().getProfiles().entrySet()) {
+            if (!e.getKey().startsWith(cloud.name + "/")) continue;
+
+            Long median = e.getValue().getPercentile(BootProfile.Stage.TOTAL, 50);
+            if (median != null) {
+                medians.add(median);
+            }
+        }
+        if (medians.isEmpty()) return null;
+
+        medians.sort(null);
+        return medians.get(medians.size() / 2);
+    }
+
+    private static double getSuccessRate(@Nonnull JCloudsCloud cloud) {
+        return Math.max(MIN_SUCCESS_RATE, cloud.getCircuitBreaker().getSuccessRate());
+    }
+
+    /**
+     * Portion of the workload the cloud can take before reaching instance caps.
+     */
+    private static double getCapacity(@Nonnull JCloudsCloud cloud, @CheckForNull Label label, int excessWorkload) {
+        if (excessWorkload <= 0) return 1;
+        return Math.min(1D, (double) cloud.getCachedCapacity(label) / excessWorkload);
+    }
+
+    private static boolean hasHeadroom(@Nonnull JCloudsCloud cloud) {
+        QuotaTracker.Headroom headroom = cloud.getQuota().getCachedHeadroom();
+        // Not provisioned from yet, the quota will be read when it is
+        return headroom == null || headroom.take(null, false);
+    }
+}
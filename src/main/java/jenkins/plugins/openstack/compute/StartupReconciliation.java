@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.slaves.ComputerListener;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reconcile clouds right after Jenkins startup, before agents restored from disk are connected.
+ *
+ * Nodes whose servers are gone are dropped based on a single server listing per cloud instead of being launched in
+ * vain until the periodic cleanup notices. Surviving agents are connected afterwards, at most {@link #CONCURRENCY} at
+ * a time. Clouds are reconciled in parallel and their agents are connected as soon as their own reconciliation
+ * completes. Agents are connected even if the reconciliation fails.
+ *
+ * The reconciliation starts once Jenkins has created computers for all the nodes loaded from disk, which is announced
+ * by the first {@link #onConfigurationChange()} after the initialization is {@link InitMilestone#COMPLETED}.
+ */
+@Extension @Restricted(NoExternalUse.class)
+public final class StartupReconciliation extends ComputerListener {
+    private static final Logger LOGGER = Logger.getLogger(StartupReconciliation.class.getName());
+
+    /**
+     * Number of agents being connected at the same time.
+     */
+    private static final int CONCURRENCY = Integer.getInteger(StartupReconciliation.class.getName() + ".concurrency", 16);
+
+    /**
+     * Time to wait for an agent to connect before starting to connect another one instead.
+     */
+    private static final long CONNECT_TIMEOUT = Long.getLong(
+            StartupReconciliation.class.getName() + ".connectTimeout", TimeUnit.MINUTES.toMillis(5)
+    );
+
+    // Guarded by this
+    private boolean started = false;
+    private final @Nonnull Map<String, Progress> clouds = new HashMap<>();
+    private final @Nonnull List<JCloudsComputer> deferred = new ArrayList<>();
+
+    /*package*/ static @Nonnull StartupReconciliation get() {
+        return ExtensionList.lookup(ComputerListener.class).get(StartupReconciliation.class);
+    }
+
+    /**
+     * Computers of all the nodes are (re)created before this is called, no matter when the nodes were loaded.
+     */
+    @Override
+    public void onConfigurationChange() {
+        if (Jenkins.get().getInitLevel() == InitMilestone.COMPLETED) {
+            start();
+        }
+    }
+
+    /**
+     * Postpone connecting the computer until its cloud is reconciled.
+     *
+     * @return true if deferred, false if the computer is supposed to be connected right away.
+     */
+    /*package*/ synchronized boolean defer(@Nonnull JCloudsComputer computer) {
+        if (started) {
+            Progress progress = clouds.get(computer.getId().getCloudName());
+            if (progress == null || progress.reconciled) return false;
+            progress.agents++;
+        }
+        deferred.add(computer);
+        return true;
+    }
+
+    /**
+     * Human readable progress of the startup reconciliation of the cloud, null when done.
+     */
+    public synchronized @CheckForNull String getProgress(@Nonnull String cloudName) {
+        Progress progress = clouds.get(cloudName);
+        if (progress == null || progress.isDone()) return null;
+        return progress.reconciled
+                ? "Connected " + progress.connected + " of " + progress.agents + " agent(s) after startup"
+                : "Reconciling " + progress.agents + " agent(s) after startup"
+        ;
+    }
+
+    /*package*/ void start() {
+        List<JCloudsCloud> toReconcile = JCloudsCloud.getClouds();
+        List<JCloudsComputer> unknownCloud = new ArrayList<>();
+        synchronized (this) {
+            if (started) return;
+            started = true;
+
+            for (JCloudsCloud cloud : toReconcile) {
+                clouds.put(cloud.name, new Progress());
+            }
+            for (JCloudsComputer computer : deferred) {
+                Progress progress = clouds.get(computer.getId().getCloudName());
+                if (progress == null) {
+                    unknownCloud.add(computer);
+                } else {
+                    progress.agents++;
+                }
+            }
+            deferred.removeAll(unknownCloud);
+        }
+
+        // Called while Jenkins is starting, do not hold it
+        Computer.threadPoolForRemoting.submit(() -> connect(unknownCloud, null));
+        for (JCloudsCloud cloud : toReconcile) {
+            Computer.threadPoolForRemoting.submit(() -> reconcile(cloud));
+        }
+    }
+
+    private void reconcile(@Nonnull JCloudsCloud cloud) {
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            Jenkins.get().getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class).reconcileNow(cloud);
+        } catch (JCloudsCloud.LoginFailure ex) {
+            LOGGER.log(Level.WARNING, "Unable to authenticate: " + ex.getMessage());
+        } catch (Throwable ex) {
+            LOGGER.log(Level.WARNING, "Unable to reconcile cloud " + cloud.name + " after startup", ex);
+        }
+
+        List<JCloudsComputer> computers = new ArrayList<>();
+        Progress progress;
+        synchronized (this) {
+            progress = clouds.get(cloud.name);
+            progress.reconciled = true;
+            for (JCloudsComputer computer : deferred) {
+                if (cloud.name.equals(computer.getId().getCloudName())) {
+                    computers.add(computer);
+                }
+            }
+            deferred.removeAll(computers);
+        }
+
+        LOGGER.info("Connecting " + computers.size() + " agent(s) of cloud " + cloud.name + " after startup");
+        connect(computers, progress);
+    }
+
+    private void connect(@Nonnull List<JCloudsComputer> computers, @CheckForNull Progress progress) {
+        // Sliding window of launches in progress, the oldest one is awaited when full
+        Deque<Launch> window = new ArrayDeque<>(CONCURRENCY);
+        for (JCloudsComputer computer : computers) {
+            if (window.size() >= CONCURRENCY && !await(window.removeFirst(), progress)) return;
+
+            // Removed as a zombie or terminated meanwhile
+            if (computer.getNode() == null || computer.isPendingDelete()) {
+                connected(progress);
+                continue;
+            }
+            window.addLast(new Launch(computer.connect(false)));
+        }
+
+        while (!window.isEmpty()) {
+            if (!await(window.removeFirst(), progress)) return;
+        }
+    }
+
+    /**
+     * @return false if interrupted.
+     */
+    private boolean await(@Nonnull Launch launch, @CheckForNull Progress progress) {
+        try {
+            launch.future.get(Math.max(0, launch.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            // Reported by the computer launch log
+        } catch (TimeoutException ex) {
+            // Let it connect in the background not to hold the other agents back
+        }
+        connected(progress);
+        return true;
+    }
+
+    private void connected(@CheckForNull Progress progress) {
+        if (progress != null) {
+            synchronized (this) {
+                progress.connected++;
+            }
+        }
+    }
+
+    private static final class Launch {
+        private final @Nonnull Future<?> future;
+        private final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+
+        private Launch(@Nonnull Future<?> future) {
+            this.future = future;
+        }
+    }
+
+    private static final class Progress {
+        private int agents;
+        private int connected;
+        private boolean reconciled;
+
+        private boolean isDone() {
+            return reconciled && connected >= agents;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live count of available computers per template.
+ *
+ * Computers report their state changes and only those are re-evaluated when the counts are read, so the cost of a read
+ * is proportional to the number of changes rather than to the number of computers. Task completion is reported while
+ * the executor is still busy, so the computer is reported once more after the executor has finished.
+ */
+@Restricted(NoExternalUse.class)
+public final class TemplateCensus {
+
+    /**
+     * Period to re-evaluate all computers not to depend on every single state change being reported.
+     */
+    private static final long RESYNC_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Period to check whether the executor has finished after task completion.
+     */
+    /*package*/ static final long IDLE_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private static final TemplateCensus INSTANCE = new TemplateCensus();
+
+    private final @Nonnull Set<JCloudsComputer> dirty = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this
+    private final @Nonnull Map<JCloudsComputer, String> known = new HashMap<>(); // Key of the template counted for, null if not available
+    private final @Nonnull Map<String, Integer> available = new HashMap<>();
+    private long lastResync = System.currentTimeMillis();
+    private @CheckForNull Jenkins jenkins = Jenkins.getInstanceOrNull();
+
+    /*package*/ static @Nonnull TemplateCensus get() {
+        return INSTANCE;
+    }
+
+    /*package for testing*/ TemplateCensus() {}
+
+    /**
+     * Computer state has changed so it needs to be re-evaluated.
+     */
+    /*package*/ void changed(@Nonnull JCloudsComputer computer) {
+        dirty.add(computer);
+    }
+
+    /**
+     * Task has completed on the computer.
+     */
+    /*package*/ void taskCompleted(@Nonnull JCloudsComputer computer, @Nonnull Executor executor) {
+        changed(computer);
+        awaitFinished(computer, executor);
+    }
+
+    private void awaitFinished(@Nonnull JCloudsComputer computer, @Nonnull Executor executor) {
+        Timer.get().schedule(() -> {
+            // Keep checking unless the node is gone already
+            if (executor.isActive() && computer.getNode() != null) {
+                awaitFinished(computer, executor);
+            } else {
+                changed(computer);
+            }
+        }, IDLE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of computers of the template that are idle, not pending delete and not put offline by user.
+     */
+    /*package*/ synchronized int getAvailable(@Nonnull String cloudName, @Nonnull String templateName) {
+        refresh();
+        Integer count = available.get(key(cloudName, templateName));
+        return count == null ? 0 : count;
+    }
+
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (now - lastResync > RESYNC_PERIOD || j != jenkins) { // Computers of a previous instance are discarded this way
+            lastResync = now;
+            jenkins = j;
+            dirty.addAll(known.keySet());
+        }
+
+        for (Iterator<JCloudsComputer> it = dirty.iterator(); it.hasNext(); ) {
+            JCloudsComputer computer = it.next();
+            it.remove();
+            evaluate(computer);
+        }
+    }
+
+    private void evaluate(@Nonnull JCloudsComputer computer) {
+        JCloudsSlave node = computer.getNode();
+        if (node == null || node.getComputer() != computer) { // Removed
+            count(computer, null);
+            known.remove(computer);
+            return;
+        }
+
+        boolean available = computer.isIdle() && !computer.isPendingDelete() && !computer.isUserOffline();
+        count(computer, available ? key(computer.getId()) : null);
+    }
+
+    private void count(@Nonnull JCloudsComputer computer, @CheckForNull String key) {
+        String old = known.put(computer, key);
+        if (Objects.equals(old, key)) return;
+
+        if (old != null) {
+            available.merge(old, -1, Integer::sum);
+        }
+        if (key != null) {
+            available.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private static @Nonnull String key(@Nonnull ProvisioningActivity.Id id) {
+        return key(id.getCloudName(), id.getTemplateName());
+    }
+
+    private static @Nonnull String key(@Nonnull String cloudName, @CheckForNull String templateName) {
+        return cloudName + "/" + templateName;
+    }
+
+    @Extension
+    public static final class Listener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            changed(c);
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            changed(c);
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            changed(c);
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            changed(c);
+        }
+
+        private void changed(Computer c) {
+            if (c instanceof JCloudsComputer) {
+                get().changed((JCloudsComputer) c);
+            }
+        }
+    }
+}
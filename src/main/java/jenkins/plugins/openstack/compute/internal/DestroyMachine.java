@@ -70,6 +70,7 @@ public final class DestroyMachine implements Disposable {
             return State.PURGED; // Disappeared in the meantime.
         }
         os.destroyServer(server);
+        cloud.getQuota().invalidate();
         return State.PURGED; // If not thrown
     }
 
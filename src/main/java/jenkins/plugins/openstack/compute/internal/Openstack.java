@@ -35,11 +35,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -54,6 +57,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
@@ -73,6 +77,7 @@ import org.openstack4j.api.compute.ServerService;
 import org.openstack4j.api.exceptions.ClientResponseException;
 import org.openstack4j.api.exceptions.ResponseException;
 import org.openstack4j.model.common.ActionResponse;
+import org.openstack4j.model.compute.AbsoluteLimit;
 import org.openstack4j.model.compute.Address;
 import org.openstack4j.model.compute.Fault;
 import org.openstack4j.model.compute.Flavor;
@@ -113,6 +118,19 @@ public class Openstack {
     private static final Logger LOGGER = Logger.getLogger(Openstack.class.getName());
     public static final String FINGERPRINT_KEY = "jenkins-instance";
 
+    /**
+     * Period to list all servers, to tag servers of ours that are not tagged yet.
+     */
+    private static final long FULL_SCAN_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Compute API microversion that introduced server tags. Nova serves 2.1 unless asked otherwise.
+     */
+    private static final Map<String, String> TAGS_MICROVERSION = ImmutableMap.of(
+            "X-OpenStack-Nova-API-Version", "2.26",
+            "OpenStack-API-Version", "compute 2.26"
+    );
+
     private static final Comparator<Date> ACCEPT_NULLS = Comparator.nullsLast(Comparator.naturalOrder());
     private static final Comparator<Flavor> FLAVOR_COMPARATOR = Comparator.nullsLast(Comparator.comparing(Flavor::getName));
     private static final Comparator<AvailabilityZone> AVAILABILITY_ZONES_COMPARATOR = Comparator.nullsLast(
@@ -128,6 +146,17 @@ public class Openstack {
     // Store the OS session token so clients can be created from it per all threads using this.
     private final ClientProvider clientProvider;
 
+    // Ids of our servers known to carry the instance tag
+    private final Set<String> tagged = ConcurrentHashMap.newKeySet();
+    // Null until probed
+    private volatile Boolean tagsSupported;
+    private volatile long lastFullScan;
+
+    // Image name or id -> ids, loaded from the inventory snapshot until revalidated
+    private volatile Map<String, List<String>> provisionalImageIds = Collections.emptyMap();
+    // Image name or id -> ids, as last resolved by this client
+    private final Map<String, List<String>> resolvedImageIds = new ConcurrentHashMap<>();
+
     private Openstack(@Nonnull String endPointUrl, boolean ignoreSsl, @Nonnull OpenstackCredential auth, @CheckForNull String region) {
 
         final IOSClientBuilder<? extends OSClient<?>, ?> builder = auth.getBuilder(endPointUrl);
@@ -311,6 +340,24 @@ public class Openstack {
     }
 
 
+    /**
+     * @return Flavors by id.
+     */
+    public @Nonnull Map<String, Flavor> getFlavors() {
+        Map<String, Flavor> flavors = new HashMap<>();
+        for (Flavor flavor : clientProvider.get().compute().flavors().list()) {
+            flavors.put(flavor.getId(), flavor);
+        }
+        return flavors;
+    }
+
+    /**
+     * Absolute limits and usage of the project.
+     */
+    public @Nonnull AbsoluteLimit getAbsoluteLimits() {
+        return clientProvider.get().compute().quotaSets().limits().getAbsolute();
+    }
+
     public @Nonnull List<String> getSortedIpPools() {
         ComputeFloatingIPService ipService = getComputeFloatingIPService();
         if (ipService == null) return Collections.emptyList();
@@ -340,20 +387,133 @@ public class Openstack {
         }
     }
 
+    /**
+     * List servers of this Jenkins instance.
+     *
+     * Servers are filtered by the instance tag on the server side. As long as some of our servers might not be tagged,
+     * all servers are listed periodically to tag them. The fingerprint is verified either way.
+     */
     public @Nonnull List<Server> getRunningNodes() {
+        return getRunningNodes(instanceFingerprint());
+    }
+
+    @VisibleForTesting
+    /*package*/ @Nonnull List<Server> getRunningNodes(@Nonnull String fingerprint) {
         List<Server> running = new ArrayList<>();
 
-        // We need details to inspect state and metadata
-        final boolean detailed = true;
-        for (Server n: clientProvider.get().compute().servers().list(detailed)) {
-            if (isOccupied(n) && isOurs(n)) {
+        long now = System.currentTimeMillis();
+        boolean tags = areTagsSupported();
+        boolean fullScan = !tags || now - lastFullScan > FULL_SCAN_PERIOD;
+        Map<String, String> filter = fullScan
+                ? Collections.emptyMap()
+                : Collections.singletonMap("tags", instanceTag(fingerprint))
+        ;
+
+        // Listed with details to inspect state and metadata
+        List<String> untagged = new ArrayList<>();
+        forEachServer(tags, filter, n -> {
+            if (isOccupied(n) && fingerprint.equals(n.getMetadata().get(FINGERPRINT_KEY))) {
                 running.add(n);
+                if (fullScan && !tagged.contains(n.getId())) {
+                    untagged.add(n.getId());
+                } else {
+                    tagged.add(n.getId());
+                }
+            }
+        });
+
+        if (fullScan) {
+            lastFullScan = now;
+            tagged.retainAll(running.stream().map(Server::getId).collect(Collectors.toSet()));
+            for (String id : untagged) {
+                tag(id, fingerprint);
             }
         }
 
         return running;
     }
 
+    /**
+     * Iterate over servers page by page so foreign servers are not retained all at once.
+     */
+    private void forEachServer(boolean tags, @Nonnull Map<String, String> filter, @Nonnull Consumer<Server> consumer) {
+        final int LIMIT = 100;
+        Map<String, String> params = new HashMap<>(filter);
+        params.put("limit", Integer.toString(LIMIT));
+
+        ServerService servers = (tags ? tagsClient() : clientProvider.get()).compute().servers();
+        List<? extends Server> page = servers.list(params);
+        while (true) {
+            page.forEach(consumer);
+            if (page.size() < LIMIT) return;
+
+            params.put("marker", page.get(LIMIT - 1).getId());
+            page = servers.list(params);
+        }
+    }
+
+    /**
+     * Nova server tag identifying servers of this Jenkins instance.
+     *
+     * Tags are limited in length and character set so it is derived from the fingerprint.
+     */
+    @VisibleForTesting
+    /*package*/ static @Nonnull String instanceTag(@Nonnull String fingerprint) {
+        return "jenkins-" + Util.getDigestOf(fingerprint).substring(0, 16);
+    }
+
+    private void tag(@Nonnull String serverId, @Nonnull String fingerprint) {
+        if (!areTagsSupported()) return;
+        try {
+            tagsClient().compute().serverTags().addSingle(serverId, instanceTag(fingerprint));
+            tagged.add(serverId);
+        } catch (ClientResponseException ex) {
+            // Tags are known to be supported so the server was deleted in the meantime
+            if (ex.getStatus() != 404) {
+                LOGGER.log(Level.WARNING, "Unable to tag server " + serverId, ex);
+                lastFullScan = 0; // Listing by tag would miss it
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to tag server " + serverId, ex);
+            lastFullScan = 0;
+        }
+    }
+
+    /**
+     * Client requesting the compute API microversion that supports server tags.
+     */
+    private @Nonnull OSClient<?> tagsClient() {
+        OSClient<?> client = clientProvider.get();
+        client.headers(TAGS_MICROVERSION);
+        return client;
+    }
+
+    /**
+     * Determine whether the compute API supports server tags, probed once per client.
+     *
+     * Nova rejects a microversion it does not support with 406 (400 by older releases) regardless of the request,
+     * so a minimal listing asking for the tags microversion tells an unsupported API apart from a missing server
+     * that tag requests report by 404.
+     */
+    private boolean areTagsSupported() {
+        Boolean supported = tagsSupported;
+        if (supported != null) return supported;
+
+        try {
+            tagsClient().compute().servers().list(Collections.singletonMap("limit", "1"));
+            supported = true;
+        } catch (ClientResponseException ex) {
+            if (ex.getStatus() != 406 && ex.getStatus() != 400) {
+                LOGGER.log(Level.WARNING, "Unable to determine whether server tags are supported", ex);
+                return false; // Probe again next time
+            }
+            LOGGER.log(Level.INFO, "Server tags not supported, listing all servers: " + ex.getMessage());
+            supported = false;
+        }
+        tagsSupported = supported;
+        return supported;
+    }
+
     public List<String> getFreeFipIds() {
         ArrayList<String> free = new ArrayList<>();
         for (NetFloatingIP ip : clientProvider.get().networking().floatingip().list()) {
@@ -381,6 +541,9 @@ public class Openstack {
      * @return Zero, one or multiple IDs.
      */
     public @Nonnull List<String> getImageIdsFor(String nameOrId) {
+        List<String> provisional = provisionalImageIds.get(nameOrId);
+        if (provisional != null) return provisional;
+
         final Collection<Image> sortedObjects = new TreeSet<>(IMAGE_DATE_COMPARATOR);
         final Map<String, String> query = new HashMap<>(2);
         query.put("name", nameOrId);
@@ -397,9 +560,26 @@ public class Openstack {
         for (Image i : sortedObjects) {
             ids.add(i.getId());
         }
+        resolvedImageIds.put(nameOrId, new ArrayList<>(ids));
         return ids;
     }
 
+    /**
+     * Image resolutions performed by this client, to be persisted.
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull Map<String, List<String>> getResolvedImageIds() {
+        return new HashMap<>(resolvedImageIds);
+    }
+
+    /**
+     * Resolve images to the given IDs instead of querying OpenStack. Empty map to query OpenStack.
+     */
+    @Restricted(NoExternalUse.class)
+    public void setProvisionalImageIds(@Nonnull Map<String, List<String>> ids) {
+        provisionalImageIds = Collections.unmodifiableMap(new HashMap<>(ids));
+    }
+
     /**
      * Finds the Id(s) of all available {@link VolumeSnapshot}s with the given name
      * or ID. If we have found multiple {@link VolumeSnapshot}s then they will
@@ -446,6 +626,9 @@ public class Openstack {
      * Sets the name and description of a {@link Volume}. These will be visible
      * if a user looks at volumes using the OpenStack command-line or WebUI.
      *
+     * The description is suffixed with a tag identifying the volume as created by this Jenkins instance so it can be
+     * cleaned up in case it leaks, see {@link #getFreeVolumes()}.
+     *
      * @param volumeId
      *            The ID of the volume whose name and description are to be set.
      * @param newVolumeName
@@ -454,10 +637,66 @@ public class Openstack {
      *            The new description for the volume.
      */
     public void setVolumeNameAndDescription(String volumeId, String newVolumeName, String newVolumeDescription) {
-        final ActionResponse res = clientProvider.get().blockStorage().volumes().update(volumeId, newVolumeName, newVolumeDescription);
+        final ActionResponse res = clientProvider.get().blockStorage().volumes().update(
+                volumeId, newVolumeName, newVolumeDescription + " " + volumeTag()
+        );
         throwIfFailed(res);
     }
 
+    /**
+     * Volumes created by this Jenkins instance that are not attached to any server.
+     */
+    public @Nonnull List<Volume> getFreeVolumes() {
+        String tag = volumeTag();
+        List<Volume> free = new ArrayList<>();
+        // Cinder filters by single status so they are listed one after another
+        for (String status : new String[] {"available", "error"}) {
+            for (Volume volume : getAllVolumes(status)) {
+                String description = volume.getDescription();
+                if (description == null || !description.endsWith(tag)) continue;
+
+                if (volume.getAttachments() != null && !volume.getAttachments().isEmpty()) continue;
+
+                free.add(volume);
+            }
+        }
+        return free;
+    }
+
+    private @Nonnull List<Volume> getAllVolumes(@Nonnull String status) {
+        final int LIMIT = 100;
+        Map<String, String> params = new HashMap<>(3);
+        params.put("status", status);
+        params.put("limit", Integer.toString(LIMIT));
+
+        List<? extends Volume> page = clientProvider.get().blockStorage().volumes().list(params);
+        List<Volume> all = new ArrayList<>(page);
+        while(page.size() == LIMIT) {
+            params.put("marker", page.get(LIMIT - 1).getId());
+            page = clientProvider.get().blockStorage().volumes().list(params);
+            all.addAll(page);
+        }
+
+        return all;
+    }
+
+    public void destroyVolume(@Nonnull String volumeId) {
+        ActionResponse delete = clientProvider.get().blockStorage().volumes().delete(volumeId);
+
+        // Deleted by some other action. Being idempotent here and reporting success.
+        if (delete.getCode() == 404) return;
+
+        throwIfFailed(delete);
+    }
+
+    /**
+     * Cinder volumes can not be created with metadata through the block device mapping so the description is used to
+     * identify the volumes the plugin is responsible for.
+     */
+    private @Nonnull String volumeTag() {
+        return "[" + FINGERPRINT_KEY + "=" + instanceFingerprint() + "]";
+    }
+
     /**
      * Determine whether the server is considered occupied by openstack plugin.
      */
@@ -497,6 +736,13 @@ public class Openstack {
         return server;
     }
 
+    /**
+     * Get the last lines of server console log.
+     */
+    public @CheckForNull String getConsoleOutput(@Nonnull String id, int lines) {
+        return clientProvider.get().compute().servers().getConsoleOutput(id, lines);
+    }
+
     public @Nonnull List<Server> getServersByName(@Nonnull String name) {
         List<Server> ret = new ArrayList<>();
         for (Server server : clientProvider.get().compute().servers().list(Collections.singletonMap("name", name))) {
@@ -539,6 +785,7 @@ public class Openstack {
                 throw err;
             }
             debug("Machine started: {0}", server.getName());
+            tag(server.getId(), instanceFingerprint());
             throwIfFailed(server);
             return server;
         } catch (ResponseException ex) {
@@ -546,6 +793,40 @@ public class Openstack {
         }
     }
 
+    /**
+     * Request machine to boot without waiting for it to become ACTIVE.
+     *
+     * @see #isBooted(Server)
+     * @throws ActionFailed Openstack refused the request.
+     */
+    public @Nonnull Server boot(@Nonnull ServerCreateBuilder request) throws ActionFailed {
+        debug("Requesting machine boot");
+        request.addMetadataItem(FINGERPRINT_KEY, instanceFingerprint());
+        try {
+            Server server = clientProvider.get().compute().servers().boot(request.build());
+            tag(server.getId(), instanceFingerprint());
+            return server;
+        } catch (ResponseException ex) {
+            throw new ActionFailed(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Determine whether the server requested by {@link #boot(ServerCreateBuilder)} has finished booting.
+     *
+     * @param server Fresh server state.
+     * @return true if ACTIVE, false if still booting.
+     * @throws ActionFailed The server failed to boot. It is up to the caller to dispose it.
+     */
+    public static boolean isBooted(@Nonnull Server server) throws ActionFailed {
+        Server.Status status = server.getStatus();
+        if (status == Server.Status.ACTIVE) return true;
+        if (status == Server.Status.ERROR || status == Server.Status.DELETED) {
+            throw new ActionFailed(describeFailure(server), server.getAvailabilityZone());
+        }
+        return false;
+    }
+
     @Restricted(NoExternalUse.class) // Test hook
     public Server _bootAndWaitActive(@Nonnull ServerCreateBuilder request, @Nonnegative int timeout) {
         request.addMetadataItem(FINGERPRINT_KEY, instanceFingerprint());
@@ -591,6 +872,8 @@ public class Openstack {
             return; // Deleted
         }
 
+        tagVolumesOfFailedBoot(server);
+
         ActionResponse res = servers.delete(nodeId);
         if (res.getCode() == 404) {
             debug("Machine destroyed: {0}", nodeId);
@@ -600,6 +883,29 @@ public class Openstack {
         throwIfFailed(res);
     }
 
+    /**
+     * Volumes of servers that failed to boot are created by the plugin from the boot source but they are not tagged
+     * yet. Do it so they can be collected should OpenStack fail to delete them with the server.
+     */
+    private void tagVolumesOfFailedBoot(@Nonnull Server server) {
+        Server.Status status = server.getStatus();
+        if (status != Server.Status.ERROR && status != Server.Status.BUILD) return;
+
+        List<String> volumeIds = server.getOsExtendedVolumesAttached();
+        if (volumeIds == null) return;
+
+        int i = 0;
+        for (String volumeId : volumeIds) {
+            try {
+                setVolumeNameAndDescription(
+                        volumeId, server.getName() + '[' + (i++) + ']', "For " + server.getName() + " (" + server.getId() + "), failed to boot."
+                );
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.FINE, "Unable to tag volume " + volumeId + " of " + server.getId(), ex);
+            }
+        }
+    }
+
     /**
      * Assign floating ip address to the server.
      *
@@ -717,6 +1023,20 @@ public class Openstack {
         Server.Status status = server.getStatus();
         if (status == Server.Status.ACTIVE) return; // Success
 
+        // Destroy the server
+        ActionFailed ex = new ActionFailed(describeFailure(server), server.getAvailabilityZone());
+        try {
+            // TODO async disposer
+            destroyServer(server);
+        } catch (ActionFailed suppressed) {
+            ex.addSuppressed(suppressed);
+        }
+        LOGGER.log(Level.WARNING, "Machine provisioning failed: " + server, ex);
+        throw ex;
+    }
+
+    private static @Nonnull String describeFailure(@Nonnull Server server) {
+        Server.Status status = server.getStatus();
         StringBuilder sb = new StringBuilder();
         sb.append("Failed to boot server ").append(server.getName());
         if (status == Server.Status.BUILD) {
@@ -733,17 +1053,7 @@ public class Openstack {
             : String.format("%d: %s (%s)", fault.getCode(), fault.getMessage(), fault.getDetails())
         ;
         sb.append(" fault=").append(msg);
-
-        // Destroy the server
-        ActionFailed ex = new ActionFailed(sb.toString());
-        try {
-            // TODO async disposer
-            destroyServer(server);
-        } catch (ActionFailed suppressed) {
-            ex.addSuppressed(suppressed);
-        }
-        LOGGER.log(Level.WARNING, "Machine provisioning failed: " + server, ex);
-        throw ex;
+        return sb.toString();
     }
 
     /**
@@ -767,12 +1077,27 @@ public class Openstack {
     public static final class ActionFailed extends RuntimeException {
         private static final long serialVersionUID = -1657469882396520333L;
 
+        private final @CheckForNull String availabilityZone;
+
         public ActionFailed(String msg) {
-            super(msg);
+            this(msg, (String) null);
         }
 
         public ActionFailed(String msg, Throwable cause) {
             super(msg, cause);
+            this.availabilityZone = null;
+        }
+
+        /*package*/ ActionFailed(String msg, @CheckForNull String availabilityZone) {
+            super(msg);
+            this.availabilityZone = availabilityZone;
+        }
+
+        /**
+         * Zone the failed server was booted in, if known.
+         */
+        public @CheckForNull String getAvailabilityZone() {
+            return availabilityZone;
         }
     }
 
@@ -0,0 +1,245 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import hudson.init.Terminator;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detect TCP ports are open without blocking the caller.
+ *
+ * Connection attempts of all callers are multiplexed on a single selector thread. Callers poll for the outcome
+ * repeatedly: the first call initiates the connection, following calls report the outcome once it is known and start
+ * over afterwards. The thread is stopped when Jenkins terminates and started again when needed.
+ */
+@Restricted(NoExternalUse.class)
+public final class PortProbe {
+    private static final Logger LOGGER = Logger.getLogger(PortProbe.class.getName());
+
+    /**
+     * Attempts not completed in time are considered failed.
+     */
+    private static final long CONNECT_TIMEOUT = 5000;
+
+    private static final PortProbe INSTANCE = new PortProbe();
+
+    private final @Nonnull Map<InetSocketAddress, Attempt> attempts = new ConcurrentHashMap<>();
+    private final @Nonnull Queue<Attempt> registrations = new ConcurrentLinkedQueue<>();
+    private Selector selector; // Guarded by this
+    private Thread thread; // Guarded by this
+
+    public static @Nonnull PortProbe get() {
+        return INSTANCE;
+    }
+
+    /*package for testing*/ PortProbe() {}
+
+    /**
+     * Check the port is open.
+     *
+     * @return null if the port accepted the connection, or the cause it is not open (yet).
+     */
+    public @CheckForNull String probe(@Nonnull InetSocketAddress address) {
+        Attempt attempt = attempts.get(address);
+        if (attempt == null) {
+            attempt = new Attempt(address);
+            Attempt existing = attempts.putIfAbsent(address, attempt);
+            if (existing != null) {
+                attempt = existing;
+            } else {
+                start(attempt);
+            }
+        }
+
+        String outcome = attempt.outcome.get();
+        if (outcome == null && System.currentTimeMillis() - attempt.started > CONNECT_TIMEOUT) {
+            attempt.fail("Connection to " + address + " timed out");
+            outcome = attempt.outcome.get();
+        }
+
+        if (outcome == null) return "Connection to " + address + " pending";
+
+        attempts.remove(address, attempt);
+        return outcome == Attempt.OPEN ? null : outcome;
+    }
+
+    private void start(@Nonnull Attempt attempt) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            attempt.channel = channel;
+            channel.configureBlocking(false);
+            if (channel.connect(attempt.address)) {
+                attempt.open();
+                return;
+            }
+
+            registrations.add(attempt);
+            selector().wakeup();
+        } catch (IOException ex) {
+            attempt.fail(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Start the selector thread unless running.
+     */
+    private synchronized @Nonnull Selector selector() throws IOException {
+        if (selector == null || !selector.isOpen() || !thread.isAlive()) {
+            if (selector != null) {
+                selector.close(); // The thread has died
+            }
+            Selector s = Selector.open();
+            Thread t = new Thread(() -> select(s), "OpenStack port probe");
+            t.setDaemon(true);
+            selector = s;
+            thread = t;
+            t.start();
+        }
+        return selector;
+    }
+
+    /**
+     * Stop the selector thread failing all pending attempts. It is started over by the next probe.
+     */
+    /*package*/ void stop() {
+        Selector s;
+        synchronized (this) {
+            s = selector;
+            selector = null;
+            thread = null;
+        }
+        if (s == null) return;
+
+        try {
+            s.close(); // Terminates the thread
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to close port probe selector", ex);
+        }
+        registrations.clear();
+        for (Attempt attempt : attempts.values()) {
+            attempt.fail("Port probe stopped");
+        }
+    }
+
+    @Terminator
+    public static void terminate() {
+        INSTANCE.stop();
+    }
+
+    private void select(@Nonnull Selector selector) {
+        while (selector.isOpen()) {
+            try {
+                selector.select(CONNECT_TIMEOUT);
+
+                Attempt registration;
+                while ((registration = registrations.poll()) != null) {
+                    try {
+                        registration.channel.register(selector, SelectionKey.OP_CONNECT, registration);
+                    } catch (IOException ex) {
+                        registration.fail(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Attempt attempt = (Attempt) key.attachment();
+                    try {
+                        if (((SocketChannel) key.channel()).finishConnect()) {
+                            attempt.open();
+                        }
+                    } catch (IOException ex) {
+                        attempt.fail(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                    }
+                }
+
+                // Abandoned by callers
+                long abandoned = System.currentTimeMillis() - CONNECT_TIMEOUT * 10;
+                for (Attempt attempt : attempts.values()) {
+                    if (attempt.started < abandoned) {
+                        attempt.fail("Abandoned");
+                        attempts.remove(attempt.address, attempt);
+                    }
+                }
+            } catch (ClosedSelectorException ex) {
+                return; // Stopped
+            } catch (Throwable ex) {
+                LOGGER.log(Level.WARNING, "Port probe failed", ex);
+            }
+        }
+    }
+
+    private static final class Attempt {
+        private static final String OPEN = "open";
+
+        private final @Nonnull InetSocketAddress address;
+        private final long started = System.currentTimeMillis();
+        private volatile SocketChannel channel;
+        // Set once, by whichever of the selector thread and the caller timing it out comes first
+        private final @Nonnull AtomicReference<String> outcome = new AtomicReference<>();
+
+        private Attempt(@Nonnull InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private void open() {
+            outcome.compareAndSet(null, OPEN);
+            close();
+        }
+
+        private void fail(@Nonnull String cause) {
+            outcome.compareAndSet(null, cause);
+            close();
+        }
+
+        private void close() {
+            SocketChannel ch = channel;
+            if (ch == null) return;
+            try {
+                ch.close(); // Deregisters from selector as well
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Unable to close probe to " + address, ex);
+            }
+        }
+    }
+}
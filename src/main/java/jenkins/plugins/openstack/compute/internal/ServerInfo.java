@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
+import jenkins.plugins.openstack.compute.ServerScope;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.Server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Part of the server state the plugin uses, to be retained instead of {@link Server}.
+ */
+@Restricted(NoExternalUse.class)
+@Immutable
+public final class ServerInfo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] METADATA_KEYS = {
+            Openstack.FINGERPRINT_KEY,
+            JCloudsSlaveTemplate.OPENSTACK_CLOUD_NAME_KEY,
+            JCloudsSlaveTemplate.OPENSTACK_TEMPLATE_NAME_KEY,
+            ServerScope.METADATA_KEY
+    };
+
+    private final @Nonnull String id;
+    private final @Nonnull String name;
+    private final @Nonnull Server.Status status;
+    private final long created; // 0 if unknown
+    private final @Nonnull Map<String, String> metadata;
+    private final @CheckForNull String accessIp;
+
+    private ServerInfo(
+            @Nonnull String id, @Nonnull String name, @Nonnull Server.Status status, long created,
+            @Nonnull Map<String, String> metadata, @CheckForNull String accessIp
+    ) {
+        this.id = id;
+        this.name = name;
+        this.status = status;
+        this.created = created;
+        this.metadata = Collections.unmodifiableMap(metadata);
+        this.accessIp = accessIp;
+    }
+
+    public static @Nonnull ServerInfo of(@Nonnull Server server) {
+        Map<String, String> metadata = new HashMap<>(METADATA_KEYS.length);
+        Map<String, String> all = server.getMetadata();
+        if (all != null) {
+            for (String key : METADATA_KEYS) {
+                String value = all.get(key);
+                if (value != null) {
+                    metadata.put(key, value);
+                }
+            }
+        }
+
+        String accessIp;
+        try {
+            accessIp = Openstack.getAccessIpAddress(server);
+        } catch (RuntimeException ex) {
+            accessIp = null; // Addresses not populated or not usable
+        }
+
+        Date created = server.getCreated();
+        Server.Status status = server.getStatus();
+        return new ServerInfo(
+                server.getId(), server.getName(), status == null ? Server.Status.UNKNOWN : status,
+                created == null ? 0 : created.getTime(), metadata, accessIp
+        );
+    }
+
+    public @Nonnull String getId() {
+        return id;
+    }
+
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    public @Nonnull Server.Status getStatus() {
+        return status;
+    }
+
+    public @CheckForNull Date getCreated() {
+        return created == 0 ? null : new Date(created);
+    }
+
+    /**
+     * Metadata the plugin uses to identify the server, other entries are not retained.
+     */
+    public @Nonnull Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public @CheckForNull String getAccessIp() {
+        return accessIp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(id, ((ServerInfo) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "Server " + name + " (" + id + "): " + status + (accessIp == null ? "" : " " + accessIp);
+    }
+}
@@ -110,6 +110,35 @@ public abstract class BootSource extends AbstractDescribableImpl<BootSource> imp
         return (BootSourceDescriptor) super.getDescriptor();
     }
 
+    /**
+     * OpenStack creates a Volume for the Instance to boot from but it
+     * does not give that Volume a name or description. We do this so
+     * that humans can recognize those Volumes, and so the plugin can
+     * recognize them should they leak.
+     */
+    protected static void nameVolumes(@Nonnull Server server, @Nonnull Openstack openstack, @Nonnull String origin) {
+        final List<String> volumeIds = server.getOsExtendedVolumesAttached();
+        if (volumeIds == null) return;
+
+        final String instanceName = server.getName();
+        final String newVolumeDescription = "For " + instanceName + " (" + server.getId() + "), from " + origin + ".";
+        int i = 0;
+        for (final String volumeId : volumeIds) {
+            final String newVolumeName = instanceName + '[' + (i++) + ']';
+            try {
+                openstack.setVolumeNameAndDescription(volumeId, newVolumeName, newVolumeDescription);
+            } catch (Openstack.ActionFailed ex) {
+                /*
+                 * Some versions of OpenStack work better than others. Not all will accept this
+                 * operation. However, a failure to set the name and description is purely
+                 * cosmetic and does not affect our ability to use the instance, so we log the
+                 * problem and carry on.
+                 */
+                LOGGER.warning("Unable to set volume " + volumeId + " name and description: " + ex.getMessage());
+            }
+        }
+    }
+
     protected String selectIdFromListAndLogProblems(List<String> matchingIds, String name, String pluralOfNameType) {
         int size = matchingIds.size();
         final String id;
@@ -343,6 +372,15 @@ public abstract class BootSource extends AbstractDescribableImpl<BootSource> imp
             builder.addMetadataItem(OPENSTACK_BOOTSOURCE_VOLUME_FROM_IMAGE_ID_KEY, id);
         }
 
+        @Override
+        public void afterProvisioning(@Nonnull Server server, @Nonnull Openstack openstack) {
+            final Map<String, String> instanceMetaData = server.getMetadata();
+            final String instanceImageId = instanceMetaData == null
+                    ? null
+                    : instanceMetaData.get(OPENSTACK_BOOTSOURCE_VOLUME_FROM_IMAGE_ID_KEY);
+            nameVolumes(server, openstack, "Image " + name + (instanceImageId == null ? "" : " (" + instanceImageId + ")"));
+        }
+
         @Override
         public String toString() {
             return "Volume from Image " + name + " (" + volumeSize + "GB)";
@@ -413,35 +451,11 @@ public abstract class BootSource extends AbstractDescribableImpl<BootSource> imp
 
         @Override
         public void afterProvisioning(@Nonnull Server server, @Nonnull Openstack openstack) {
-            /*
-             * OpenStack creates a Volume for the Instance to boot from but it
-             * does not give that Volume a name or description. We do this so
-             * that humans can recognize those Volumes.
-             */
-            final List<String> volumeIds = server.getOsExtendedVolumesAttached();
-            final String instanceId = server.getId();
-            final String instanceName = server.getName();
             final Map<String, String> instanceMetaData = server.getMetadata();
             final String instanceVolumeSnapshotId = instanceMetaData == null
                     ? null
                     : instanceMetaData.get(OPENSTACK_BOOTSOURCE_VOLUMESNAPSHOT_ID_KEY);
-            int i = 0;
-            final String newVolumeDescription = "For " + instanceName + " (" + instanceId + "), from VolumeSnapshot "
-                    + name + (instanceVolumeSnapshotId == null ? "" : " (" + instanceVolumeSnapshotId + ")") + ".";
-            for (final String volumeId : volumeIds) {
-                final String newVolumeName = instanceName + '[' + (i++) + ']';
-                try {
-                    openstack.setVolumeNameAndDescription(volumeId, newVolumeName, newVolumeDescription);
-                } catch (Openstack.ActionFailed ex) {
-                    /*
-                     * Some versions of OpenStack work better than others. Not all will accept this
-                     * operation. However, a failure to set the name and description is purely
-                     * cosmetic and does not affect our ability to use the instance, so we log the
-                     * problem and carry on.
-                     */
-                    LOGGER.warning("Unable to set volume " + volumeId + " name and description: " + ex.getMessage());
-                }
-            }
+            nameVolumes(server, openstack, "VolumeSnapshot " + name + (instanceVolumeSnapshotId == null ? "" : " (" + instanceVolumeSnapshotId + ")"));
         }
 
         @Override
@@ -27,6 +27,7 @@ import com.cloudbees.jenkins.plugins.sshcredentials.SSHAuthenticator;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameListBoxModel;
 import com.trilead.ssh2.Connection;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
@@ -35,6 +36,7 @@ import hudson.model.Descriptor;
 import hudson.model.ItemGroup;
 import hudson.plugins.sshslaves.SSHLauncher;
 import hudson.plugins.sshslaves.verifiers.NonVerifyingKeyVerificationStrategy;
+import hudson.plugins.sshslaves.verifiers.SshHostKeyVerificationStrategy;
 import hudson.security.ACL;
 import hudson.security.AccessControlled;
 import hudson.slaves.ComputerLauncher;
@@ -43,6 +45,7 @@ import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import jenkins.plugins.openstack.compute.JCloudsCloud;
 import jenkins.plugins.openstack.compute.JCloudsSlave;
+import jenkins.plugins.openstack.compute.ReadinessStatistics;
 import jenkins.plugins.openstack.compute.SlaveOptions;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
@@ -58,11 +61,7 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.ConnectException;
 import java.net.InetSocketAddress;
-import java.net.NoRouteToHostException;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.util.Collections;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -97,6 +96,14 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
      */
     public abstract @CheckForNull String isWaitingFor(@Nonnull JCloudsSlave slave) throws JCloudsCloud.ProvisioningFailedException;
 
+    /**
+     * Whether the slave can only get ready by coming online, so provisioning can wait for that instead of polling
+     * {@link #isWaitingFor(JCloudsSlave)}.
+     */
+    public boolean isReadinessSignalled() {
+        return false;
+    }
+
     /**
      * Launch nodes via ssh-slaves plugin.
      */
@@ -105,6 +112,9 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
 
         private final @Nonnull String credentialsId;
         private final @CheckForNull String javaPath;
+        private final @CheckForNull String agentJarPath;
+        @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "Persisted by XStream, not serialized")
+        private final @CheckForNull SshHostKeyVerificationStrategy hostKeyVerificationStrategy;
 
         public @Nonnull String getCredentialsId() {
             return credentialsId;
@@ -114,10 +124,37 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
             return javaPath;
         }
 
+        public @CheckForNull String getAgentJarPath() {
+            return agentJarPath;
+        }
+
+        /**
+         * @return null if host key is not verified.
+         */
+        public @CheckForNull SshHostKeyVerificationStrategy getHostKeyVerificationStrategy() {
+            return hostKeyVerificationStrategy;
+        }
+
         @DataBoundConstructor
-        public SSH(@Nonnull String credentialsId, String javaPath) {
+        public SSH(
+                @Nonnull String credentialsId, String javaPath, String agentJarPath,
+                SshHostKeyVerificationStrategy hostKeyVerificationStrategy
+        ) {
             this.credentialsId = credentialsId;
             this.javaPath = Util.fixEmptyAndTrim(javaPath);
+            this.agentJarPath = Util.fixEmptyAndTrim(agentJarPath);
+            this.hostKeyVerificationStrategy = hostKeyVerificationStrategy instanceof NonVerifyingKeyVerificationStrategy
+                    ? null
+                    : hostKeyVerificationStrategy
+            ;
+        }
+
+        public SSH(@Nonnull String credentialsId, String javaPath, String agentJarPath) {
+            this(credentialsId, javaPath, agentJarPath, null);
+        }
+
+        public SSH(@Nonnull String credentialsId, String javaPath) {
+            this(credentialsId, javaPath, null);
         }
 
         public SSH(@Nonnull String credentialsId) {
@@ -126,8 +163,9 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
 
         @Override
         public ComputerLauncher createLauncher(@Nonnull JCloudsSlave slave) {
-            int maxNumRetries = 5;
-            int retryWaitTime = 15;
+            ReadinessStatistics readiness = ReadinessStatistics.of(slave.getId().getCloudName(), Util.fixNull(slave.getId().getTemplateName()));
+            int maxNumRetries = readiness.getMaxNumRetries();
+            int retryWaitTime = readiness.getRetryWaitTime();
 
             String publicAddress = slave.getPublicAddress();
 
@@ -135,6 +173,14 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
             Integer timeout = opts.getStartTimeout();
             timeout = timeout == null ? 0: (timeout / 1000); // Never propagate null - always set some timeout
 
+            if (agentJarPath != null) {
+                // Agent JAR is delivered by image / config drive / user data, only start it
+                return new PrestagedSshLauncher(
+                        publicAddress, 22, credentialsId, opts.getJvmOptions(), javaPath, agentJarPath, timeout * 1000,
+                        hostKeyVerificationStrategy
+                );
+            }
+
             return new SSHLauncher(
                     publicAddress, 22,
                     credentialsId,
@@ -143,7 +189,7 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
                     "", "",
                     timeout,
                     maxNumRetries, retryWaitTime,
-                    new NonVerifyingKeyVerificationStrategy()
+                    hostKeyVerificationStrategy == null ? new NonVerifyingKeyVerificationStrategy() : hostKeyVerificationStrategy
             );
         }
 
@@ -153,15 +199,20 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
 
             SSH ssh = (SSH) o;
 
-            return Objects.equals(credentialsId, ssh.credentialsId) && Objects.equals(javaPath, ssh.javaPath);
+            return Objects.equals(credentialsId, ssh.credentialsId) && Objects.equals(javaPath, ssh.javaPath)
+                    && Objects.equals(agentJarPath, ssh.agentJarPath)
+                    && Objects.equals(hostKeyVerificationStrategy, ssh.hostKeyVerificationStrategy)
+            ;
         }
 
         @Override public int hashCode() {
-            return Objects.hash(credentialsId, javaPath);
+            return Objects.hash(credentialsId, javaPath, agentJarPath, hostKeyVerificationStrategy);
         }
 
         @Override public String toString() {
-            return "LauncherFactory.SSH: credId:" + credentialsId + ", javaPath:" + javaPath;
+            return "LauncherFactory.SSH: credId:" + credentialsId + ", javaPath:" + javaPath + ", agentJarPath:" + agentJarPath
+                    + ", hostKeyVerificationStrategy:" + hostKeyVerificationStrategy
+            ;
         }
 
         /**
@@ -186,19 +237,11 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
 
             // Wait until ssh is exposed not to timeout for too long in ssh-slaves launcher
             try {
-                Socket socket = new Socket();
-                socket.connect(new InetSocketAddress(publicAddress, 22), 500);
-                socket.close();
-                return null;
-            } catch (ConnectException | NoRouteToHostException | SocketTimeoutException ex) {
-                // Exactly what we are looking for
-                String msg = "SSH port at " + publicAddress + " not open (yet)";
-                LOGGER.log(Level.FINEST, msg, ex);
-                return msg;
-            } catch (IOException ex) {
-                // TODO: General IOException to be understood and handled explicitly
-                String msg = "SSH port at " + publicAddress + " does not seem to respond correctly: " + ex.getMessage();
-                LOGGER.log(Level.INFO, msg, ex);
+                String cause = PortProbe.get().probe(new InetSocketAddress(publicAddress, 22));
+                if (cause == null) return null;
+
+                String msg = "SSH port at " + publicAddress + " not open (yet): " + cause;
+                LOGGER.log(Level.FINEST, msg);
                 return msg;
             } catch (Exception ex) {
                 LOGGER.log(Level.WARNING, "SSH probe failed", ex);
@@ -233,6 +276,11 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
 
         public static final LauncherFactory JNLP = new JNLP();
 
+        /**
+         * File with JNLP connection details injected to servers with config drive.
+         */
+        public static final String CONFIG_DRIVE_FILE = "/etc/jenkins/jnlp.properties";
+
         @DataBoundConstructor // Needed for JCasC
         public JNLP() {}
 
@@ -248,6 +296,11 @@ public abstract class LauncherFactory extends AbstractDescribableImpl<LauncherFa
             return slave.getChannel() != null ? null : "JNLP connection was not established yet";
         }
 
+        @Override
+        public boolean isReadinessSignalled() {
+            return true;
+        }
+
         @Override
         public int hashCode() {
             return 31;
@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.slaveopts;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHAuthenticator;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.SCPClient;
+import com.trilead.ssh2.ServerHostKeyVerifier;
+import com.trilead.ssh2.Session;
+import hudson.Util;
+import hudson.model.Descriptor;
+import hudson.model.Slave;
+import hudson.model.TaskListener;
+import hudson.plugins.sshslaves.SSHLauncher;
+import hudson.plugins.sshslaves.verifiers.HostKey;
+import hudson.plugins.sshslaves.verifiers.SshHostKeyVerificationStrategy;
+import hudson.remoting.Channel;
+import hudson.security.ACL;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.SlaveComputer;
+import hudson.util.StreamCopyThread;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Start agent over SSH using agent JAR delivered to the machine out of band.
+ *
+ * The JAR is expected to be baked into the image, placed on config drive or fetched by user data script. It is only
+ * copied over SSH when missing or when its checksum does not match the JAR of this Jenkins instance. Host key is
+ * verified using the strategy configured for the SSH launcher, if any. Retries are performed by
+ * {@link jenkins.plugins.openstack.compute.JCloudsLauncher}.
+ */
+@Restricted(NoExternalUse.class)
+public final class PrestagedSshLauncher extends ComputerLauncher {
+    private static final Logger LOGGER = Logger.getLogger(PrestagedSshLauncher.class.getName());
+
+    private static volatile AgentJar agentJar;
+
+    private final @Nonnull String host;
+    private final int port;
+    private final @Nonnull String credentialsId;
+    private final @CheckForNull String jvmOptions;
+    private final @CheckForNull String javaPath;
+    private final @Nonnull String agentJarPath;
+    private final int timeout;
+    private final @CheckForNull SshHostKeyVerificationStrategy hostKeyVerificationStrategy;
+
+    private transient volatile Connection connection;
+
+    /**
+     * @param timeout Connection timeout in milliseconds.
+     * @param hostKeyVerificationStrategy Strategy to verify the host key with, null to accept any.
+     */
+    /*package*/ PrestagedSshLauncher(
+            @Nonnull String host, int port, @Nonnull String credentialsId, @CheckForNull String jvmOptions,
+            @CheckForNull String javaPath, @Nonnull String agentJarPath, int timeout,
+            @CheckForNull SshHostKeyVerificationStrategy hostKeyVerificationStrategy
+    ) {
+        this.host = host;
+        this.port = port;
+        this.credentialsId = credentialsId;
+        this.jvmOptions = jvmOptions;
+        this.javaPath = javaPath;
+        this.agentJarPath = agentJarPath;
+        this.timeout = timeout;
+        this.hostKeyVerificationStrategy = hostKeyVerificationStrategy;
+    }
+
+    public @Nonnull String getHost() {
+        return host;
+    }
+
+    public @Nonnull String getAgentJarPath() {
+        return agentJarPath;
+    }
+
+    @Override
+    public void launch(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
+        Slave node = computer.getNode();
+        if (node == null) return;
+
+        StandardUsernameCredentials credentials = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(StandardUsernameCredentials.class, Jenkins.get(), ACL.SYSTEM, SSHLauncher.SSH_SCHEME),
+                CredentialsMatchers.withId(credentialsId)
+        );
+        if (credentials == null) {
+            listener.error("No SSH credentials found with id " + credentialsId);
+            return;
+        }
+
+        Connection conn = new Connection(host, port);
+        try {
+            listener.getLogger().println("Connecting to " + host + ":" + port);
+            conn.connect(hostKeyVerifier(computer, listener), timeout, timeout);
+            if (!SSHAuthenticator.newInstance(conn, credentials).authenticate(listener) || !conn.isAuthenticationComplete()) {
+                listener.error("Authentication failed");
+                return;
+            }
+
+            String fsRoot = node.getRemoteFS();
+            ensureAgentJar(conn, listener, AgentJar.get());
+            exec(conn, "mkdir -p " + quote(fsRoot));
+
+            String cmd = "cd " + quote(fsRoot) + " && "
+                    + (javaPath == null ? "java" : javaPath) + " " + Util.fixNull(jvmOptions)
+                    + " -jar " + quote(agentJarPath)
+            ;
+            listener.getLogger().println("Starting agent: " + cmd);
+            final Session session = conn.openSession();
+            session.execCommand(cmd);
+            new StreamCopyThread("stderr copier for " + node.getNodeName(), session.getStderr(), listener.getLogger()).start();
+
+            final Connection established = conn;
+            computer.setChannel(session.getStdout(), session.getStdin(), listener, new Channel.Listener() {
+                @Override public void onClosed(Channel channel, IOException cause) {
+                    session.close();
+                    established.close();
+                }
+            });
+            connection = conn;
+            conn = null; // Keep open
+        } catch (IOException ex) {
+            ex.printStackTrace(listener.error("Unable to launch agent over SSH"));
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+        }
+    }
+
+    @Override
+    public void afterDisconnect(SlaveComputer computer, TaskListener listener) {
+        Connection conn = connection;
+        if (conn != null) {
+            conn.close();
+            connection = null;
+        }
+    }
+
+    /**
+     * @return null to accept any host key.
+     */
+    private @CheckForNull ServerHostKeyVerifier hostKeyVerifier(@Nonnull SlaveComputer computer, @Nonnull TaskListener listener) {
+        SshHostKeyVerificationStrategy strategy = hostKeyVerificationStrategy;
+        if (strategy == null) return null;
+
+        return (hostname, port, algorithm, key) -> strategy.verify(computer, new HostKey(algorithm, key), listener);
+    }
+
+    /*package*/ void ensureAgentJar(@Nonnull Connection conn, @Nonnull TaskListener listener, @Nonnull AgentJar jar) throws IOException {
+        String expected = jar.checksum;
+        String output = exec(conn, "sha256sum " + quote(agentJarPath) + " 2>/dev/null");
+        String actual = output == null ? null : output.trim().split("\\s+")[0];
+        if (expected.equals(actual)) {
+            listener.getLogger().println("Using pre-staged agent JAR " + agentJarPath);
+            return;
+        }
+
+        listener.getLogger().println("Pre-staged agent JAR " + agentJarPath + " missing or outdated, copying it over SSH");
+        int slash = agentJarPath.lastIndexOf('/');
+        String dir = slash > 0 ? agentJarPath.substring(0, slash) : ".";
+        String name = agentJarPath.substring(slash + 1);
+        exec(conn, "mkdir -p " + quote(dir));
+        SCPClient scp = conn.createSCPClient();
+        scp.put(jar.content, name, dir, "0644");
+    }
+
+    /**
+     * @return Standard output of the command, or null if it failed.
+     */
+    private @CheckForNull String exec(@Nonnull Connection conn, @Nonnull String cmd) throws IOException {
+        Session session = conn.openSession();
+        try {
+            session.execCommand(cmd);
+            String out = IOUtils.toString(session.getStdout(), StandardCharsets.UTF_8);
+            session.waitForCondition(ChannelCondition.EXIT_STATUS, timeout);
+            Integer status = session.getExitStatus();
+            if (status == null || status != 0) {
+                LOGGER.log(Level.FINE, "Command '" + cmd + "' failed on " + host + ": " + status);
+                return null;
+            }
+            return out;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Agent JAR of this Jenkins instance with its checksum, read once as it does not change until restart.
+     */
+    /*package*/ static final class AgentJar {
+        private final @Nonnull byte[] content;
+        private final @Nonnull String checksum;
+
+        /*package*/ AgentJar(@Nonnull byte[] content) {
+            this.content = content;
+            try {
+                this.checksum = Util.toHexString(MessageDigest.getInstance("SHA-256").digest(content));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new AssertionError(ex); // Mandatory algorithm
+            }
+        }
+
+        /*package*/ @Nonnull String getChecksum() {
+            return checksum;
+        }
+
+        private static @Nonnull AgentJar get() throws IOException {
+            AgentJar jar = agentJar;
+            if (jar == null) {
+                // Racing threads read the same content
+                agentJar = jar = new AgentJar(new Slave.JnlpJar("slave.jar").readFully());
+            }
+            return jar;
+        }
+    }
+
+    private static @Nonnull String quote(@Nonnull String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+    @Override
+    public Descriptor<ComputerLauncher> getDescriptor() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,63 @@
+package jenkins.plugins.openstack.pipeline;
+
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Complete {@link OpenStackMachineStep}s once the servers they requested are ACTIVE.
+ *
+ * Single periodic task checks all the pending step executions so no thread is held per step.
+ */
+@Restricted(NoExternalUse.class)
+/*package*/ final class BootWatcher {
+    private static final Logger LOGGER = Logger.getLogger(BootWatcher.class.getName());
+
+    private static final long PERIOD = Long.getLong(BootWatcher.class.getName() + ".period", 5000);
+
+    private static final Set<OpenStackMachineStep.Execution> pending = ConcurrentHashMap.newKeySet();
+
+    // Guarded by BootWatcher.class
+    private static ScheduledFuture<?> task;
+
+    private BootWatcher() {}
+
+    /*package*/ static synchronized void watch(@Nonnull OpenStackMachineStep.Execution execution) {
+        pending.add(execution);
+        if (task == null) {
+            task = Timer.get().scheduleWithFixedDelay(BootWatcher::check, PERIOD, PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*package*/ static void unwatch(@Nonnull OpenStackMachineStep.Execution execution) {
+        pending.remove(execution);
+    }
+
+    private static void check() {
+        for (OpenStackMachineStep.Execution execution : pending) {
+            try {
+                if (execution.checkServers()) {
+                    pending.remove(execution);
+                }
+            } catch (Throwable ex) {
+                // Keep watching, the problem might be temporary
+                LOGGER.log(Level.WARNING, "Failed checking servers: " + execution, ex);
+            }
+        }
+
+        synchronized (BootWatcher.class) {
+            if (pending.isEmpty() && task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package jenkins.plugins.openstack.pipeline;
 
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.Cloud;
@@ -10,6 +12,9 @@ import jenkins.model.Jenkins;
 import jenkins.plugins.openstack.compute.JCloudsCloud;
 import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
 import jenkins.plugins.openstack.compute.ServerScope;
+import jenkins.plugins.openstack.compute.internal.DestroyMachine;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -17,11 +22,16 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.openstack4j.model.compute.Server;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.logging.Logger;
 
 /**
  * Provision auxiliary server not to be connected to Jenkins.
@@ -32,6 +42,7 @@ import java.util.Set;
  * node {
  *     def x = openstackMachine cloud: 'mitaka', template: 'CentOS-7'
  *     def y = openstackMachine cloud: 'mitaka', template: 'CentOS-7', scope: 'unlimited'
+ *     def z = openstackMachine cloud: 'mitaka', template: 'CentOS-7', count: 5 // List of servers
  * }
  * </pre>
  */
@@ -41,6 +52,7 @@ public class OpenStackMachineStep extends Step {
     private @Nonnull String cloud = "";
     private @Nonnull String template = "";
     private @Nonnull String scope = "run";
+    private int count = 1;
 
     @DataBoundConstructor
     public OpenStackMachineStep() {
@@ -67,6 +79,12 @@ public class OpenStackMachineStep extends Step {
         }
     }
 
+    @DataBoundSetter
+    public void setCount(int count) {
+        if (count < 1) throw new IllegalArgumentException("Invalid count: " + count);
+        this.count = count;
+    }
+
     @Nonnull public String getCloud() {
         return cloud;
     }
@@ -79,6 +97,10 @@ public class OpenStackMachineStep extends Step {
         return scope;
     }
 
+    public int getCount() {
+        return count;
+    }
+
     @Override
     public StepExecution start(StepContext context) throws Exception {
         if (scope.equals("run")) {
@@ -134,23 +156,187 @@ public class OpenStackMachineStep extends Step {
         }
     }
 
-    public static class Execution extends SynchronousNonBlockingStepExecution<SimplifiedServer> {
+    /**
+     * Request the servers and let {@link BootWatcher} complete the step once they are ACTIVE.
+     *
+     * No thread is held while the servers are booting and the IDs of the requested servers survive Jenkins restart.
+     */
+    public static class Execution extends StepExecution {
         private static final long serialVersionUID = -1471755378664792632L;
+        private static final Logger LOGGER = Logger.getLogger(Execution.class.getName());
 
         private final @Nonnull String cloud;
         private final @Nonnull String template;
         private final @Nonnull String scope;
+        private final int count;
+
+        // Null until the servers are requested
+        private volatile @CheckForNull ArrayList<String> serverIds;
+        private volatile long deadline;
+        private transient boolean stopped; // Guarded by this
+        private transient boolean completed; // Guarded by this
 
         Execution(OpenStackMachineStep step, StepContext context) {
             super(context);
             this.cloud = step.cloud;
             this.template = step.template;
             this.scope = step.scope;
+            this.count = step.count;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            JCloudsSlaveTemplate t = getTemplate();
+            ServerScope serverScope = ServerScope.parse(scope);
+
+            // Even sending the boot requests talks to OpenStack so do not block the CPS VM thread by it
+            Computer.threadPoolForRemoting.submit(() -> requestServers(t, serverScope));
+            return false;
+        }
+
+        private void requestServers(@Nonnull JCloudsSlaveTemplate t, @Nonnull ServerScope serverScope) {
+            try {
+                int timeout = t.getEffectiveSlaveOptions().getStartTimeout();
+
+                // Only the boot requests are sent here, waiting for the servers is up to the BootWatcher
+                List<Server> servers = t.bootServers(serverScope, count);
+                ArrayList<String> ids = new ArrayList<>(servers.size());
+                for (Server server : servers) {
+                    ids.add(server.getId());
+                }
+                synchronized (this) {
+                    serverIds = ids;
+                    deadline = System.currentTimeMillis() + timeout;
+                    if (stopped) {
+                        // The step was stopped while the requests were being sent
+                        disposeServers();
+                        return;
+                    }
+                }
+
+                BootWatcher.watch(this);
+            } catch (Throwable ex) {
+                getContext().onFailure(ex);
+            }
+        }
+
+        @Override
+        public void onResume() {
+            if (serverIds == null) {
+                getContext().onFailure(new AbortException("Jenkins was restarted before the servers were requested"));
+                return;
+            }
+            LOGGER.info("Resuming the wait for servers " + serverIds + " after restart");
+            BootWatcher.watch(this);
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) {
+            BootWatcher.unwatch(this);
+            synchronized (this) {
+                if (completed) return;
+                stopped = true;
+                disposeServers();
+            }
+            getContext().onFailure(cause);
+        }
+
+        /**
+         * Check the servers and complete the step when they are all ACTIVE or some of them failed.
+         *
+         * Failures to talk to OpenStack are propagated for the server to be checked again later, until the deadline.
+         *
+         * @return true if the step does not need to be watched anymore.
+         */
+        /*package*/ boolean checkServers() {
+            assert serverIds != null;
+            List<Server> active = new ArrayList<>(serverIds.size());
+            JCloudsSlaveTemplate t;
+            try {
+                t = getTemplate();
+                Openstack openstack = JCloudsCloud.getByName(cloud).getOpenstack();
+                for (String id : serverIds) {
+                    Server server;
+                    try {
+                        server = openstack.getServerById(id);
+                    } catch (NoSuchElementException ex) {
+                        throw new Openstack.ActionFailed("Server " + id + " disappeared while booting");
+                    }
+                    if (!Openstack.isBooted(server)) {
+                        if (System.currentTimeMillis() > deadline) throw new Openstack.ActionFailed(
+                                "Failed to provision the " + server.getName() + " in time. Existing server: " + server
+                        );
+                        return false;
+                    }
+                    active.add(server);
+                }
+            } catch (Openstack.ActionFailed ex) {
+                fail(ex);
+                return true;
+            } catch (RuntimeException ex) {
+                if (System.currentTimeMillis() <= deadline) throw ex; // Might be temporary
+                fail(ex);
+                return true;
+            }
+
+            // Post-boot configuration talks to OpenStack so do not delay watching other servers by it
+            Computer.threadPoolForRemoting.submit(() -> complete(t, active));
+            return true;
+        }
+
+        private void complete(@Nonnull JCloudsSlaveTemplate t, @Nonnull List<Server> servers) {
+            try {
+                ArrayList<SimplifiedServer> ret = new ArrayList<>(servers.size());
+                for (Server server : servers) {
+                    ret.add(new SimplifiedServer(cloud, template, scope, t.finishProvisioning(server)));
+                }
+                // Single server is returned as is not to break existing pipelines
+                if (settle()) {
+                    getContext().onSuccess(count == 1 ? ret.get(0) : ret);
+                }
+            } catch (Throwable ex) {
+                fail(ex);
+            }
+        }
+
+        private void fail(@Nonnull Throwable ex) {
+            synchronized (this) {
+                if (!settle()) return;
+                disposeServers();
+            }
+            getContext().onFailure(ex);
+        }
+
+        /**
+         * Claim the completion of the step.
+         *
+         * @return false if stopped or completed already.
+         */
+        private synchronized boolean settle() {
+            if (stopped || completed) return false;
+            completed = true;
+            return true;
+        }
+
+        private void disposeServers() {
+            if (serverIds == null) return;
+            for (String id : serverIds) {
+                AsyncResourceDisposer.get().dispose(new DestroyMachine(cloud, id));
+            }
+        }
+
+        private @Nonnull JCloudsSlaveTemplate getTemplate() {
+            JCloudsSlaveTemplate t = JCloudsCloud.getByName(cloud).getTemplate(template);
+            if (t == null) throw new IllegalArgumentException("Invalid template: " + template);
+            return t;
         }
 
         @Override
-        protected SimplifiedServer run() throws Exception {
-            return new SimplifiedServer(this.cloud, this.template, this.scope);
+        public String toString() {
+            return serverIds == null
+                    ? "Requesting " + count + " server(s) from " + cloud + "/" + template
+                    : "Waiting for servers " + serverIds + " to become active"
+            ;
         }
     }
 }
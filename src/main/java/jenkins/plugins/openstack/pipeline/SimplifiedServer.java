@@ -4,7 +4,7 @@ import jenkins.plugins.openstack.compute.JCloudsCloud;
 import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
 import jenkins.plugins.openstack.compute.ServerScope;
 import jenkins.plugins.openstack.compute.internal.DestroyMachine;
-import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
 import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.kohsuke.accmod.Restricted;
@@ -23,11 +23,17 @@ public class SimplifiedServer implements Serializable {
     private static final long serialVersionUID = 860084023141474202L;
 
     // Null after destroyed
+    private @CheckForNull ServerInfo server;
+    @Deprecated // Replaced by server
     private @CheckForNull Server srv;
     private @Nonnull String cloud;
     private @Nonnull String template;
     private @Nonnull String scope;
 
+    /**
+     * @deprecated Provisions the server synchronously. Use the {@code openstackMachine} step.
+     */
+    @Deprecated
     public SimplifiedServer(@Nonnull String cloud, @Nonnull String template, @Nonnull String scope) {
         this.template = template;
         this.cloud = cloud;
@@ -38,37 +44,52 @@ public class SimplifiedServer implements Serializable {
         JCloudsSlaveTemplate t = jcl.getTemplate(template);
         if (t == null) throw new IllegalArgumentException("Invalid template: " + template);
 
-        this.srv = t.provisionServer(serverscope, null);
+        this.server = ServerInfo.of(t.provisionServer(serverscope, null));
+    }
+
+    /*package*/ SimplifiedServer(@Nonnull String cloud, @Nonnull String template, @Nonnull String scope, @Nonnull Server srv) {
+        this.template = template;
+        this.cloud = cloud;
+        this.scope = scope;
+        this.server = ServerInfo.of(srv);
+    }
+
+    private Object readResolve() {
+        if (srv != null) {
+            server = ServerInfo.of(srv);
+            srv = null;
+        }
+        return this;
     }
 
     @Whitelisted
     public void destroy() {
-        if (srv == null) return; // Already terminated.
+        if (server == null) return; // Already terminated.
 
-        DestroyMachine dm = new DestroyMachine(this.cloud, srv.getId());
+        DestroyMachine dm = new DestroyMachine(this.cloud, server.getId());
         AsyncResourceDisposer.get().dispose(dm);
-        srv = null;
+        server = null;
     }
 
     @Whitelisted
     public String getAddress() {
-        if (srv == null) return null;
+        if (server == null) return null;
 
-        return Openstack.getAccessIpAddress(srv);
+        return server.getAccessIp();
     }
 
     @Whitelisted
     public String getStatus() {
-        return srv != null
-                ? srv.getStatus().name()
+        return server != null
+                ? server.getStatus().name()
                 : null
         ;
     }
 
     @Whitelisted
     public String getId() {
-        return srv != null
-                ? srv.getId()
+        return server != null
+                ? server.getId()
                 : null
         ;
     }
@@ -267,7 +267,7 @@ public final class PluginTestRule extends JenkinsRule {
      * Force idle slave cleanup now.
      */
     public void triggerOpenstackSlaveCleanup() {
-        jenkins.getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class).execute(TaskListener.NULL);
+        jenkins.getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class).forceCleanup();
         AsyncResourceDisposer disposer = AsyncResourceDisposer.get();
         while (disposer.isActivated()) {
             try {
@@ -282,7 +282,7 @@ public final class PluginTestRule extends JenkinsRule {
      * Force slave pre-creation now.
      */
     public void triggerSlavePreCreation() {
-        JCloudsPreCreationThread.all().get(JCloudsPreCreationThread.class).execute(TaskListener.NULL);
+        JCloudsPreCreationThread.execute();
     }
 
     public JCloudsSlaveTemplate dummySlaveTemplate(String labels) {
@@ -371,7 +371,7 @@ public final class PluginTestRule extends JenkinsRule {
             Map<String, Network> nets = (Map<String, Network>) invocation.getArguments()[0];
             return nets.values().stream().collect(Collectors.toMap(n -> n, b -> 100));
         });
-        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class))).thenAnswer((Answer<Server>) invocation -> {
+        Answer<Server> boot = invocation -> {
             ServerCreateBuilder builder = (ServerCreateBuilder) invocation.getArguments()[0];
 
             ServerCreate create = builder.build();
@@ -385,7 +385,9 @@ public final class PluginTestRule extends JenkinsRule {
                 running.add(machine);
             }
             return machine;
-        });
+        };
+        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class))).thenAnswer(boot);
+        when(os.boot(any(ServerCreateBuilder.class))).thenAnswer(boot);
         when(os.updateInfo(any(Server.class))).thenAnswer((Answer<Server>) invocation1 -> (Server) invocation1.getArguments()[0]);
         when(os.getRunningNodes()).thenAnswer((Answer<List<Server>>) invocation1 -> {
             synchronized (running) {
@@ -0,0 +1,57 @@
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.PluginTestRule;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ActivityIndexTest {
+
+    @Rule
+    public PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void indexActivitiesAsProvisioned() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
+        JCloudsSlave slave = j.provision(cloud, "label");
+
+        ActivityIndex index = ActivityIndex.get();
+        ProvisioningActivity activity = index.get(slave.getId().getFingerprint());
+        assertSame(CloudStatistics.get().getActivityFor(slave), activity);
+        assertTrue(index.hasNodeName(slave.getNodeName()));
+
+        assertNull(index.get(slave.getId().getFingerprint() + 1));
+        assertFalse(index.hasNodeName("missing"));
+    }
+
+    @Test
+    public void forgetActivitiesRotatedOut() {
+        CloudStatistics.ProvisioningListener listener = CloudStatistics.ProvisioningListener.get();
+        ActivityIndex index = ActivityIndex.get();
+
+        ProvisioningActivity.Id first = new ProvisioningActivity.Id("cloud", "template", "first");
+        listener.onStarted(first);
+        index.track(first);
+        listener.onFailure(first, new Exception("Boot failed"));
+        assertEquals(ProvisioningActivity.Phase.COMPLETED, index.get(first.getFingerprint()).getCurrentPhase());
+        assertTrue(index.hasNodeName("first"));
+
+        // Complete activities until the first one is archived no more
+        for (int i = 0; CloudStatistics.get().getActivityFor(first) != null; i++) {
+            assertTrue("Activity never rotated out", i < 10_000);
+            ProvisioningActivity.Id id = new ProvisioningActivity.Id("cloud", "template", "node-" + i);
+            listener.onStarted(id);
+            listener.onFailure(id, new Exception("Boot failed"));
+        }
+
+        assertNull(index.get(first.getFingerprint()));
+        assertFalse(index.hasNodeName("first"));
+    }
+}
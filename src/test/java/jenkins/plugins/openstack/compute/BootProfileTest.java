@@ -0,0 +1,54 @@
+package jenkins.plugins.openstack.compute;
+
+import org.junit.Test;
+
+import static jenkins.plugins.openstack.compute.BootProfile.Stage.BOOT;
+import static jenkins.plugins.openstack.compute.BootProfile.Stage.LAUNCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BootProfileTest {
+
+    @Test
+    public void percentiles() {
+        BootProfile profile = new BootProfile();
+        assertNull(profile.getPercentile(BOOT, 50));
+
+        for (int i = 1; i <= 100; i++) {
+            profile.record(BOOT, i * 1000);
+        }
+
+        assertEquals(50000, (long) profile.getPercentile(BOOT, 50));
+        assertEquals(95000, (long) profile.getPercentile(BOOT, 95));
+        assertEquals(99000, (long) profile.getPercentile(BOOT, 99));
+        assertNull(profile.getPercentile(LAUNCH, 50));
+
+        // Oldest samples are discarded
+        profile.record(BOOT, 500000);
+        assertEquals(BootProfile.SAMPLES, profile.getCount(BOOT));
+        assertEquals(2000, (long) profile.getPercentile(BOOT, 1));
+    }
+
+    @Test
+    public void detectRegression() {
+        BootProfile profile = new BootProfile();
+        for (int i = 0; i < 40; i++) {
+            profile.record(LAUNCH, 30000);
+        }
+        assertFalse(profile.isDegraded());
+
+        for (int i = 0; i < BootProfile.RECENT; i++) {
+            profile.record(LAUNCH, 90000);
+        }
+        assertTrue(profile.isDegraded(LAUNCH));
+        assertFalse(profile.isDegraded(BOOT));
+
+        // New normal
+        for (int i = 0; i < BootProfile.SAMPLES; i++) {
+            profile.record(LAUNCH, 90000);
+        }
+        assertFalse(profile.isDegraded());
+    }
+}
@@ -28,6 +28,7 @@ import hudson.model.Label;
 import hudson.model.labels.LabelAtom;
 import hudson.slaves.NodeProvisioner;
 import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.internal.Openstack;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 import org.jenkinsci.plugins.cloudstats.CloudStatistics;
@@ -35,11 +36,14 @@ import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.LoggerRule;
+import org.openstack4j.model.compute.AbsoluteLimit;
+import org.openstack4j.model.compute.Flavor;
 import org.openstack4j.model.compute.Server;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -49,6 +53,8 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class InstanceCapacityTest {
 
@@ -157,6 +163,29 @@ public class InstanceCapacityTest {
         assertEquals(3, runningServersCount(openTmplt));
     }
 
+    @Test
+    public void doNotProvisionBeyondProjectQuota() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
+        Openstack os = cloud.getOpenstack();
+
+        Flavor flavor = mock(Flavor.class);
+        when(flavor.getVcpus()).thenReturn(2);
+        when(flavor.getRam()).thenReturn(1024);
+        when(os.getFlavors()).thenReturn(Collections.singletonMap("dummyHardwareId", flavor));
+
+        AbsoluteLimit limit = mock(AbsoluteLimit.class);
+        when(limit.getMaxTotalInstances()).thenReturn(10);
+        when(limit.getMaxTotalCores()).thenReturn(6);
+        when(limit.getTotalCoresUsed()).thenReturn(1);
+        when(limit.getMaxTotalRAMSize()).thenReturn(-1);
+        when(limit.getMaxTotalFloatingIps()).thenReturn(-1);
+        when(os.getAbsoluteLimits()).thenReturn(limit);
+
+        assertProvisioned(2, cloud.provision(Label.get("label"), 4));
+        // Servers planned recently are accounted before the quota is read again
+        assertProvisioned(0, cloud.provision(Label.get("label"), 1));
+    }
+
     public int runningServersCount(JCloudsSlaveTemplate restrictedTmplt) {
         return restrictedTmplt.getRunningNodes().size();
     }
@@ -34,6 +34,7 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.iterableWithSize;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -139,6 +140,23 @@ public class InstancesMinTest {
         assertThat(provisioningActivities(), iterableWithSize(1));
     }
 
+    @Test
+    public void doNotPrecreateFromSuspendedTemplate() throws Exception {
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate(
+                j.defaultSlaveOptions().getBuilder().instancesMin(1).build(),
+                "label"
+        );
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(template));
+        for (int i = 0; i < CircuitBreaker.THRESHOLD; i++) {
+            cloud.getCircuitBreaker().failure(template);
+        }
+
+        j.triggerSlavePreCreation();
+
+        assertThat(provisioningActivities(), emptyIterable());
+        assertThat(JCloudsComputer.getAll(), emptyIterable());
+    }
+
     private List<ProvisioningActivity> provisioningActivities() {
         return CloudStatistics.get().getActivities();
     }
@@ -5,7 +5,9 @@ import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.AsyncPeriodicWork;
 import hudson.model.Result;
+import hudson.model.TaskListener;
 import hudson.model.User;
 import hudson.node_monitors.DiskSpaceMonitorDescriptor;
 import hudson.slaves.OfflineCause;
@@ -13,6 +15,8 @@ import hudson.util.OneShotEvent;
 import jenkins.model.InterruptedBuildAction;
 import jenkins.plugins.openstack.PluginTestRule;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ServerInfo;
+import jenkins.plugins.openstack.compute.slaveopts.BootSource;
 import jenkins.plugins.openstack.compute.slaveopts.LauncherFactory;
 import org.hamcrest.Matchers;
 import org.jenkinsci.plugins.resourcedisposer.AsyncResourceDisposer;
@@ -22,15 +26,19 @@ import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.TestBuilder;
 import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.storage.block.Volume;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import static hudson.model.Label.get;
 import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -38,10 +46,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -163,6 +173,58 @@ public class JCloudsCleanupThreadTest {
         verify(os, never()).destroyFip("busy2");
     }
 
+    @Test
+    public void deleteLeakedVolume() {
+        SlaveOptions opts = j.defaultSlaveOptions().getBuilder().bootSource(new BootSource.VolumeSnapshot("snap")).build();
+        JCloudsCloud cloud = j.dummyCloud(j.dummySlaveTemplate(opts, "label"));
+        Openstack os = cloud.getOpenstack();
+        Volume leaked = mock(Volume.class);
+        when(leaked.getId()).thenReturn("leaked");
+        when(leaked.getCreated()).thenReturn(new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+        Volume fresh = mock(Volume.class);
+        when(fresh.getId()).thenReturn("fresh");
+        when(fresh.getCreated()).thenReturn(new Date());
+        when(os.getFreeVolumes()).thenReturn(Arrays.asList(leaked, fresh));
+
+        j.triggerOpenstackSlaveCleanup();
+        verify(os, never()).destroyVolume(anyString());
+
+        j.triggerOpenstackSlaveCleanup();
+        verify(os).destroyVolume("leaked");
+        verify(os, never()).destroyVolume("fresh");
+    }
+
+    @Test
+    public void reportReconciliationPlan() throws Exception {
+        JCloudsCloud cloud = j.dummyCloud();
+        Openstack os = cloud.getOpenstack();
+        when(os.getFreeFipIds()).thenReturn(Collections.singletonList("leaked"));
+
+        j.triggerOpenstackSlaveCleanup();
+        String report = j.createWebClient().goTo("cloud/" + cloud.name + "/reconciliation", "text/plain").getWebResponse().getContentAsString();
+        assertThat(report, containsString("Floating IPs pending confirmation: [leaked]"));
+
+        j.triggerOpenstackSlaveCleanup();
+        report = j.createWebClient().goTo("cloud/" + cloud.name + "/reconciliation", "text/plain").getWebResponse().getContentAsString();
+        assertThat(report, containsString("Orphans: 1"));
+        assertThat(report, containsString("release leaked floating IP leaked"));
+        verify(os).destroyFip("leaked");
+    }
+
+    @Test
+    public void backOffWhenNothingToCleanup() {
+        JCloudsCloud cloud = j.dummyCloud();
+        Openstack os = cloud.getOpenstack();
+        JCloudsCleanupThread cleanup = j.jenkins.getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class);
+
+        cleanup.execute(TaskListener.NULL);
+        cleanup.execute(TaskListener.NULL);
+        verify(os, times(1)).getRunningNodes();
+
+        j.triggerOpenstackSlaveCleanup();
+        verify(os, times(2)).getRunningNodes();
+    }
+
     @Test
     public void terminateNodeWithoutServer() throws Exception {
         JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
@@ -222,6 +284,103 @@ public class JCloudsCleanupThreadTest {
         );
     }
 
+    @Test
+    public void dropNodesWithoutServerBeforeConnectingAfterStartup() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
+        Openstack os = cloud.getOpenstack();
+        JCloudsSlave zombie = j.provision(cloud, "label");
+        JCloudsSlave survivor = j.provision(cloud, "label");
+
+        List<Server> servers = os.getRunningNodes();
+        assertEquals(2, servers.size());
+        Server alive = servers.get(0).getId().equals(survivor.getServerId()) ? servers.get(0) : servers.get(1);
+        when(os.getRunningNodes()).thenReturn(Collections.singletonList(alive));
+        doThrow(new NoSuchElementException()).when(os).getServerById(eq(zombie.getServerId()));
+
+        // Simulate the nodes were loaded from disk
+        StartupReconciliation startup = new StartupReconciliation();
+        assertTrue(startup.defer(zombie.getComputer()));
+        assertTrue(startup.defer(survivor.getComputer()));
+
+        startup.start();
+        assertNotNull(startup.getProgress(cloud.name));
+        while (startup.getProgress(cloud.name) != null) {
+            Thread.sleep(100);
+        }
+
+        assertNull(j.jenkins.getNode(zombie.getNodeName()));
+        assertNotNull(j.jenkins.getNode(survivor.getNodeName()));
+
+        // Connected right away once reconciled
+        assertFalse(startup.defer(survivor.getComputer()));
+    }
+
+    @Test
+    public void pruneBootProfilesOfRemovedTemplates() {
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
+        String template = cloud.getTemplates().get(0).getName();
+        BootProfiles profiles = BootProfiles.get();
+        profiles.record(cloud.name, template, BootProfile.Stage.BOOT, 1000);
+        profiles.record(cloud.name, "removed", BootProfile.Stage.BOOT, 1000);
+        profiles.record("removed", template, BootProfile.Stage.BOOT, 1000);
+
+        j.triggerOpenstackSlaveCleanup();
+
+        assertEquals(Collections.singleton(cloud.name + "/" + template), profiles.getProfiles().keySet());
+    }
+
+    @Test
+    public void doNotReconcileCloudConcurrently() throws Exception {
+        JCloudsCloud cloud = j.dummyCloud(j.dummySlaveTemplate("label"));
+        Openstack os = cloud.getOpenstack();
+        OneShotEvent reconciling = new OneShotEvent();
+        OneShotEvent proceed = new OneShotEvent();
+        when(os.getRunningNodes()).thenAnswer(invocation -> {
+            reconciling.signal();
+            proceed.block();
+            return emptyList();
+        });
+
+        JCloudsCleanupThread cleanup = j.jenkins.getExtensionList(AsyncPeriodicWork.class).get(JCloudsCleanupThread.class);
+        Thread startup = new Thread(() -> {
+            try {
+                cleanup.reconcileNow(cloud);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        startup.start();
+        reconciling.block();
+
+        cleanup.execute(TaskListener.NULL); // Skipped as being reconciled
+        proceed.signal();
+        startup.join();
+
+        verify(os, times(1)).getRunningNodes();
+        assertNotNull(cleanup.getLastPlan(cloud.name));
+    }
+
+    @Test
+    public void persistInventorySnapshot() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate("label")));
+        Openstack os = cloud.getOpenstack();
+        JCloudsSlave node = j.provision(cloud, "label");
+
+        j.triggerOpenstackSlaveCleanup();
+        assertNull("Current state is not provisional", InventorySnapshot.get().getProvisionalServers(cloud.name));
+
+        // Simulate restart
+        InventorySnapshot loaded = InventorySnapshot.load();
+        List<ServerInfo> servers = loaded.getProvisionalServers(cloud.name);
+        assertNotNull(servers);
+        assertEquals(1, servers.size());
+        assertEquals(node.getServerId(), servers.get(0).getId());
+
+        // Revalidated by the first reconciliation
+        loaded.record(cloud, os, emptyList());
+        assertNull(loaded.getProvisionalServers(cloud.name));
+    }
+
     @Test @Issue("jenkinsci/openstack-cloud-plugin#149")
     public void doNotTerminateNodeThatIsBeingProvisioned() throws Exception {
         // Simulate node stuck launching
@@ -63,6 +63,25 @@ public class JCloudsRetentionStrategyTest {
         assertTrue("Slave should be scheduled for deletion", computer.isPendingDelete());
     }
 
+    @Test
+    public void checkAgainWhenIdleDeadlineElapses() throws Exception {
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate(
+                "template", "label", SlaveOptions.builder().retentionTime(10).build()
+        );
+
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(template));
+        JCloudsSlave slave = j.provision(cloud, "label");
+        JCloudsComputer computer = slave.getComputer();
+        computer.waitUntilOnline();
+
+        assertEquals(10, checkAfter(computer, 0));
+        assertEquals(5, checkAfter(computer, 1000 * 60 * 5));
+        assertFalse(computer.isPendingDelete());
+
+        assertEquals(1, checkAfter(computer, 1000 * 60 * 11));
+        assertTrue(computer.isPendingDelete());
+    }
+
     /**
      * There are several async operations taking place here:
      *
@@ -1,6 +1,7 @@
 package jenkins.plugins.openstack.compute;
 
 import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,6 +27,7 @@ import org.openstack4j.model.compute.BDMDestType;
 import org.openstack4j.model.compute.BDMSourceType;
 import org.openstack4j.model.compute.BlockDeviceMappingCreate;
 import org.openstack4j.model.compute.NetworkCreate;
+import org.openstack4j.model.compute.Personality;
 import org.openstack4j.model.compute.Server;
 import org.openstack4j.model.compute.builder.ServerCreateBuilder;
 import org.openstack4j.model.network.Network;
@@ -121,6 +123,29 @@ public class JCloudsSlaveTemplateTest {
         assertEquals(SlaveOptions.builder().bootSource(new BootSource.Image("id")).availabilityZone("other").build(), template.getRawSlaveOptions());
     }
 
+    @Test
+    public void memoizeEffectiveOptions() throws Exception {
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", dummySlaveOptions());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "my-openstack", "endPointUrl", false, "zone",
+                SlaveOptions.empty(),
+                singletonList(template),
+                j.dummyCredentials()
+        );
+        j.jenkins.clouds.add(cloud);
+
+        SlaveOptions effective = template.getEffectiveSlaveOptions();
+        assertSame(effective, template.getEffectiveSlaveOptions());
+        assertSame(cloud.getEffectiveSlaveOptions(), cloud.getEffectiveSlaveOptions());
+        assertEquals(dummySlaveOptions().getNumExecutors(), effective.getNumExecutors());
+
+        // Reconfiguration replaces the instances
+        j.submit(j.createWebClient().goTo("configure").getFormByName("config"));
+        JCloudsSlaveTemplate reconfigured = JCloudsCloud.getByName("my-openstack").getTemplate("template");
+        assertNotSame(template, reconfigured);
+        assertEquals(effective, reconfigured.getEffectiveSlaveOptions());
+    }
+
     @Test
     public void replaceUserData() throws Exception {
         SlaveOptions opts = j.defaultSlaveOptions();
@@ -142,6 +167,27 @@ public class JCloudsSlaveTemplateTest {
         assertEquals("${unknown} ${VARIABLE}", actual.getProperty("DO_NOT_REPLACE_THIS"));
     }
 
+    @Test
+    public void injectJnlpDetailsToConfigDrive() throws Exception {
+        SlaveOptions opts = j.defaultSlaveOptions().getBuilder().launcherFactory(LauncherFactory.JNLP.JNLP).configDrive(true).build();
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate(opts,"a");
+        JCloudsCloud cloud = j.configureSlaveProvisioningWithFloatingIP(j.dummyCloud(template));
+        Openstack os = cloud.getOpenstack();
+
+        template.provisionServer(null, null);
+
+        ArgumentCaptor<ServerCreateBuilder> captor = ArgumentCaptor.forClass(ServerCreateBuilder.class);
+        verify(os).bootAndWaitActive(captor.capture(), anyInt());
+
+        Personality personality = captor.getValue().build().getPersonality().get(0);
+        assertEquals(LauncherFactory.JNLP.CONFIG_DRIVE_FILE, personality.getPath());
+        Properties actual = new Properties();
+        actual.load(new StringReader(personality.getContents()));
+        assertEquals(j.getURL().toExternalForm(), actual.getProperty("JENKINS_URL"));
+        assertThat(actual.getProperty("SLAVE_JNLP_URL"), endsWith("/slave-agent.jnlp"));
+        assertNotNull(actual.getProperty("SLAVE_JNLP_SECRET"));
+    }
+
     @Test
     public void noFloatingPoolId() {
         SlaveOptions opts = j.defaultSlaveOptions().getBuilder().floatingIpPool(null).build();
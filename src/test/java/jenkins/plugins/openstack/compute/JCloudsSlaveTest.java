@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import hudson.model.Node;
 import hudson.slaves.EnvironmentVariablesNodeProperty;
 import hudson.slaves.NodeProperty;
+import hudson.tools.ToolLocationNodeProperty;
 import jenkins.plugins.openstack.PluginTestRule;
 
 public class JCloudsSlaveTest {
@@ -168,6 +169,36 @@ public class JCloudsSlaveTest {
         assertThat(actualEnvVars, equalTo(expectedEnvVars));
     }
 
+    @Test
+    public void shareOptionsOfNodesFromSameTemplate() throws Exception {
+        ToolLocationNodeProperty tools = new ToolLocationNodeProperty();
+        SlaveOptions opts = PluginTestRule.dummySlaveOptions().getBuilder().nodeProperties(ImmutableList.of(tools)).build();
+        SlaveOptions equalOpts = PluginTestRule.dummySlaveOptions().getBuilder().nodeProperties(ImmutableList.of(tools)).build();
+        assertThat(opts, not(sameInstance(equalOpts)));
+
+        JCloudsSlave first = new JCloudsSlave(new ProvisioningActivity.Id("id1"), mockServer("first", "1.1.1.1"), "", opts);
+        JCloudsSlave second = new JCloudsSlave(new ProvisioningActivity.Id("id2"), mockServer("second", "1.1.1.2"), "", equalOpts);
+
+        assertThat(first.getSlaveOptions(), sameInstance(second.getSlaveOptions()));
+        assertThat(first.getNodeProperties().get(ToolLocationNodeProperty.class), sameInstance(tools));
+        assertThat(second.getNodeProperties().get(ToolLocationNodeProperty.class), sameInstance(tools));
+    }
+
+    @Test
+    public void shareOptionsOfNodesLoadedFromDisk() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder().nodeProperties(ImmutableList.of(PluginTestRule.mkNodeProperty(1))).build();
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(j.dummySlaveTemplate(opts, "label")));
+        String first = j.provision(cloud, "label").getNodeName();
+        String second = j.provision(cloud, "label").getNodeName();
+
+        j.jenkins.getNodesObject().load();
+
+        SlaveOptions firstOpts = ((JCloudsSlave) j.jenkins.getNode(first)).getSlaveOptions();
+        SlaveOptions secondOpts = ((JCloudsSlave) j.jenkins.getNode(second)).getSlaveOptions();
+        assertThat(firstOpts, sameInstance(secondOpts));
+        assertThat(firstOpts.getNodeProperties().get(0), instanceOf(PluginTestRule.mkNodeProperty(1).getClass()));
+    }
+
     private static Server mockServer(final String nameToReturn, final String ipAddressToReturn) {
         final Address mockAddress = mock(Address.class);
         when(mockAddress.getAddr()).thenReturn(ipAddressToReturn);
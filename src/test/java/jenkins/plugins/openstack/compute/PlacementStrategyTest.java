@@ -0,0 +1,47 @@
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.compute.PlacementStrategy.Candidate;
+import org.junit.Test;
+import org.openstack4j.model.compute.Flavor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PlacementStrategyTest {
+
+    private final JCloudsSlaveTemplate big = mock(JCloudsSlaveTemplate.class);
+    private final JCloudsSlaveTemplate small = mock(JCloudsSlaveTemplate.class);
+    private final JCloudsSlaveTemplate unknown = mock(JCloudsSlaveTemplate.class);
+
+    private final List<Candidate> candidates = Arrays.asList(
+            new Candidate(big, 2, 0, 1, flavor(8, 16384)),
+            new Candidate(unknown, 1, 0, 1, null),
+            new Candidate(small, 2, 3, 2, flavor(2, 4096))
+    );
+
+    @Test
+    public void firstFit() {
+        assertEquals(Arrays.asList(big, big, unknown, small, small), new PlacementStrategy.FirstFit().place(candidates));
+    }
+
+    @Test
+    public void cheapestFit() {
+        assertEquals(Arrays.asList(small, small, big, big, unknown), new PlacementStrategy.CheapestFit().place(candidates));
+    }
+
+    @Test
+    public void spread() {
+        assertEquals(Arrays.asList(big, unknown, big, small, small), new PlacementStrategy.Spread().place(candidates));
+    }
+
+    private static Flavor flavor(int vcpus, int ram) {
+        Flavor flavor = mock(Flavor.class);
+        when(flavor.getVcpus()).thenReturn(vcpus);
+        when(flavor.getRam()).thenReturn(ram);
+        return flavor;
+    }
+}
@@ -19,6 +19,7 @@ import jenkins.plugins.openstack.PluginTestRule;
 import jenkins.plugins.openstack.PluginTestRule.NetworkAddress;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import jenkins.plugins.openstack.compute.slaveopts.LauncherFactory;
+import jenkins.plugins.openstack.compute.slaveopts.PrestagedSshLauncher;
 import org.hamcrest.Matchers;
 import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
@@ -54,6 +55,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -125,6 +127,54 @@ public class ProvisioningTest {
         verify(os, atLeastOnce()).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
     }
 
+    @Test
+    public void suspendTemplateFailingRepeatedly() throws Exception {
+        JCloudsSlaveTemplate broken = j.dummySlaveTemplate("label");
+        JCloudsSlaveTemplate healthy = j.dummySlaveTemplate("label");
+        JCloudsCloud cloud = j.configureSlaveLaunchingWithFloatingIP(j.dummyCloud(broken, healthy));
+        CircuitBreaker breaker = cloud.getCircuitBreaker();
+
+        for (int i = 0; i < CircuitBreaker.THRESHOLD; i++) {
+            breaker.failure(broken);
+        }
+        assertFalse(breaker.isAvailable(broken));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getTripped().get(0).getState());
+
+        Collection<PlannedNode> planned = cloud.provision(Label.get("label"), 1);
+        assertEquals(1, planned.size());
+        JCloudsSlave slave = (JCloudsSlave) planned.iterator().next().future.get();
+        assertEquals(healthy.getName(), slave.getId().getTemplateName());
+
+        breaker.success(broken);
+        assertThat(breaker.getTripped(), emptyIterable());
+        assertTrue(breaker.attempt(broken));
+    }
+
+    @Test
+    public void suspendTemplateWithoutZoneOnlyWhenFailingInAllZones() throws Exception {
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate("label");
+        JCloudsCloud cloud = j.dummyCloud(template);
+        CircuitBreaker breaker = cloud.getCircuitBreaker();
+
+        breaker.success(template, "b");
+        for (int i = 0; i < CircuitBreaker.THRESHOLD; i++) {
+            breaker.failure(template, "a");
+        }
+        assertEquals(1, breaker.getTripped().size());
+        assertEquals("a", breaker.getTripped().get(0).getZone());
+        assertTrue(breaker.isAvailable(template));
+        assertTrue(breaker.attempt(template));
+
+        for (int i = 0; i < CircuitBreaker.THRESHOLD; i++) {
+            breaker.failure(template, "b");
+        }
+        assertFalse(breaker.isAvailable(template));
+        assertFalse(breaker.attempt(template));
+
+        breaker.success(template, "a");
+        assertTrue(breaker.isAvailable(template));
+    }
+
     @Test @Issue("https://github.com/jenkinsci/openstack-cloud-plugin/issues/37")
     public void detectBootTimingOut() {
         JCloudsSlaveTemplate template = j.dummySlaveTemplate("label");
@@ -165,6 +215,11 @@ public class ProvisioningTest {
         assertEquals(expected.getJvmOptions(), launcher.getJvmOptions());
         assertEquals(10, (int) slave.getSlaveOptions().getRetentionTime());
 
+        LauncherFactory.SSH prestaged = new LauncherFactory.SSH("credid", "java", "/opt/jenkins/agent.jar");
+        PrestagedSshLauncher prestagedLauncher = (PrestagedSshLauncher) prestaged.createLauncher(slave);
+        assertEquals(slave.getPublicAddress(), prestagedLauncher.getHost());
+        assertEquals("/opt/jenkins/agent.jar", prestagedLauncher.getAgentJarPath());
+
         slave = j.provision(cloud, "retention");
 
         assertEquals(42, (int) slave.getSlaveOptions().getRetentionTime());
@@ -350,6 +405,7 @@ public class ProvisioningTest {
     public void timeoutLaunching() throws Exception {
         final SlaveOptions opts = j.defaultSlaveOptions().getBuilder().startTimeout(1000).build();
         final JCloudsCloud cloud = j.configureSlaveProvisioningWithFloatingIP(j.dummyCloud(opts, j.dummySlaveTemplate("asdf")));
+        when(cloud.getOpenstack().getConsoleOutput(any(String.class), anyInt())).thenReturn("Kernel panic");
         final Iterable<NodeProvisioner.PlannedNode> pns = cloud.provision(Label.get("asdf"), 1);
         assertThat(pns, iterableWithSize(1));
         final PlannedNode pn = pns.iterator().next();
@@ -372,6 +428,12 @@ public class ProvisioningTest {
             Thread.sleep(1000);
         }
         verify(cloud.getOpenstack()).destroyServer(any(Server.class));
+
+        ProvisioningActivity pa = CloudStatistics.get().getActivities().get(0);
+        List<PhaseExecutionAttachment> attachments = pa.getPhaseExecution(ProvisioningActivity.Phase.PROVISIONING).getAttachments();
+        ConsoleLogAttachment log = (ConsoleLogAttachment) attachments.stream()
+                .filter(a -> a instanceof ConsoleLogAttachment).findFirst().orElseThrow(AssertionError::new);
+        assertEquals("Kernel panic", log.getText());
     }
 
     @Test
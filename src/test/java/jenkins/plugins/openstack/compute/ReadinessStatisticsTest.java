@@ -0,0 +1,80 @@
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.PluginTestRule.MockJCloudsCloud;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static jenkins.plugins.openstack.compute.ReadinessStatistics.DEFAULT_PROBE_INTERVAL;
+import static jenkins.plugins.openstack.compute.ReadinessStatistics.MAX_PROBE_INTERVAL;
+import static jenkins.plugins.openstack.compute.ReadinessStatistics.MIN_PROBE_INTERVAL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ReadinessStatisticsTest {
+
+    @Rule
+    public PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void defaultsWithoutObservations() {
+        ReadinessStatistics stats = new ReadinessStatistics();
+        stats.record(20000);
+
+        assertEquals(0, stats.getFirstProbeDelay());
+        assertEquals(DEFAULT_PROBE_INTERVAL, stats.getProbeInterval(10000));
+        assertEquals(15, stats.getRetryWaitTime());
+        assertEquals(5, stats.getMaxNumRetries());
+    }
+
+    @Test
+    public void scheduleProbesAroundTypicalReadiness() {
+        ReadinessStatistics stats = new ReadinessStatistics();
+        stats.record(200000);
+        stats.record(240000);
+        stats.record(220000);
+
+        assertEquals(160000, stats.getFirstProbeDelay());
+        assertEquals(MIN_PROBE_INTERVAL, stats.getProbeInterval(220000));
+        assertThat(stats.getProbeInterval(180000), greaterThan(stats.getProbeInterval(210000)));
+        assertThat(stats.getProbeInterval(300000), greaterThan(stats.getProbeInterval(230000)));
+        assertEquals(MAX_PROBE_INTERVAL, stats.getProbeInterval(1000000));
+        assertEquals(10, stats.getRetryWaitTime());
+    }
+
+    @Test
+    public void forgetOldObservations() {
+        ReadinessStatistics stats = new ReadinessStatistics();
+        for (int i = 0; i < ReadinessStatistics.SAMPLES; i++) {
+            stats.record(240000);
+        }
+        for (int i = 0; i < ReadinessStatistics.SAMPLES; i++) {
+            stats.record(20000);
+        }
+
+        assertEquals(16000, stats.getFirstProbeDelay());
+        assertThat(stats.getProbeInterval(20000), lessThan(DEFAULT_PROBE_INTERVAL));
+    }
+
+    @Test
+    public void forgetStatisticsOfReconfiguredTemplates() {
+        JCloudsSlaveTemplate kept = j.dummySlaveTemplate("label");
+        JCloudsSlaveTemplate removed = j.dummySlaveTemplate("label");
+        j.dummyCloud(kept, removed);
+        ReadinessStatistics keptStats = ReadinessStatistics.of("openstack", kept.getName());
+        ReadinessStatistics removedStats = ReadinessStatistics.of("openstack", removed.getName());
+
+        new MockJCloudsCloud(new JCloudsSlaveTemplate(kept.getName(), "label", SlaveOptions.empty()));
+        assertSame(keptStats, ReadinessStatistics.of("openstack", kept.getName()));
+        assertNotSame(removedStats, ReadinessStatistics.of("openstack", removed.getName()));
+
+        new MockJCloudsCloud(new JCloudsSlaveTemplate(
+                kept.getName(), "label", SlaveOptions.builder().startTimeout(42000).build()
+        ));
+        assertNotSame(keptStats, ReadinessStatistics.of("openstack", kept.getName()));
+    }
+}
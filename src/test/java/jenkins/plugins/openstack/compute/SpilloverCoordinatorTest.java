@@ -0,0 +1,106 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.model.Label;
+import jenkins.plugins.openstack.PluginTestRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpilloverCoordinatorTest {
+
+    @Rule
+    public PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void shareProportionally() {
+        Random random = new Random(42);
+        assertEquals(10, SpilloverCoordinator.share(10, 1, 0, random));
+        assertEquals(0, SpilloverCoordinator.share(10, 0, 1, random));
+        assertEquals(5, SpilloverCoordinator.share(10, 1, 1, random));
+        assertEquals(3, SpilloverCoordinator.share(4, 3, 1, random));
+
+        // All clouds broken
+        assertEquals(7, SpilloverCoordinator.share(7, 0, 0, random));
+    }
+
+    @Test
+    public void roundRandomly() {
+        Random random = new Random(42);
+        int total = 0;
+        for (int i = 0; i < 1000; i++) {
+            int share = SpilloverCoordinator.share(1, 1, 3, random);
+            assertEquals(share, Math.min(1, share));
+            total += share;
+        }
+        // Expected to take a quarter of single-item workloads
+        assertEquals(250, total, 50);
+    }
+
+    @Test
+    public void steerAwayFromFailingCloud() {
+        JCloudsCloud first = spilloverCloud("first");
+        JCloudsCloud second = spilloverCloud("second");
+        Label label = j.jenkins.getLabel("label");
+        JCloudsSlaveTemplate template = first.getTemplates().get(0);
+
+        // Healthy clouds split evenly, the last one taking whatever is left to it
+        assertEquals(50, SpilloverCoordinator.share(first, label, 100));
+        assertEquals(100, SpilloverCoordinator.share(second, label, 100));
+
+        for (int i = 0; i < CircuitBreaker.WINDOW; i++) {
+            first.getCircuitBreaker().failure(template);
+        }
+        int share = SpilloverCoordinator.share(first, label, 100);
+        assertTrue("Failing cloud is only probed, got " + share, share <= 5);
+
+        // Only the recent outcomes count
+        for (int i = 0; i < CircuitBreaker.WINDOW; i++) {
+            first.getCircuitBreaker().success(template);
+        }
+        assertEquals(50, SpilloverCoordinator.share(first, label, 100));
+    }
+
+    @Test
+    public void doNotSpillOverToCappedCloud() {
+        JCloudsCloud first = spilloverCloud("first", SlaveOptions.builder().instanceCap(100).build());
+        Label label = j.jenkins.getLabel("label");
+
+        JCloudsCloud capped = spilloverCloud("capped", SlaveOptions.builder().instanceCap(0).build());
+        assertEquals(0, capped.getCachedCapacity(label));
+        assertEquals(100, SpilloverCoordinator.share(first, label, 100));
+        j.jenkins.clouds.remove(capped);
+
+        // Only a tenth of the workload fits into the second cloud
+        JCloudsCloud small = spilloverCloud("small", SlaveOptions.builder().instanceCap(10).build());
+        assertEquals(10, small.getCachedCapacity(label));
+        assertEquals(91, SpilloverCoordinator.share(first, label, 100), 1);
+        j.jenkins.clouds.remove(small);
+
+        // Template caps count as well
+        JCloudsCloud cappedTemplate = spilloverCloud("cappedTemplate", null, SlaveOptions.builder().instanceCap(0).build());
+        assertEquals(0, cappedTemplate.getCachedCapacity(label));
+        assertEquals(100, SpilloverCoordinator.share(first, label, 100));
+    }
+
+    private JCloudsCloud spilloverCloud(String name) {
+        return spilloverCloud(name, null);
+    }
+
+    private JCloudsCloud spilloverCloud(String name, SlaveOptions opts) {
+        return spilloverCloud(name, opts, SlaveOptions.empty());
+    }
+
+    private JCloudsCloud spilloverCloud(String name, SlaveOptions opts, SlaveOptions templateOpts) {
+        JCloudsCloud cloud = new JCloudsCloud(
+                name, "endPointUrl", false, "zone", opts, Collections.singletonList(j.dummySlaveTemplate(templateOpts, "label")), "credentialsId"
+        );
+        cloud.setSpillover(true);
+        j.jenkins.clouds.add(cloud);
+        return cloud;
+    }
+}
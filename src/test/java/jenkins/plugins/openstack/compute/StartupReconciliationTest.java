@@ -0,0 +1,91 @@
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.openstack.compute.domain.NovaAddresses;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class StartupReconciliationTest {
+
+    @Rule
+    public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+    // Outlives the Jenkins instance, unlike the mock of PluginTestRule
+    private static final Openstack os = mock(Openstack.class, withSettings().defaultAnswer(RETURNS_SMART_NULLS));
+
+    @Test
+    public void dropNodesWithoutServerBeforeConnectingRestoredAgents() {
+        story.then(j -> {
+            JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+            JCloudsCloud cloud = new RestoredCloud(template);
+            j.jenkins.clouds.add(cloud);
+            j.jenkins.save();
+
+            Server zombie = server("zombie");
+            Server survivor = server("survivor");
+            when(os.getRunningNodes()).thenReturn(Collections.singletonList(survivor));
+            doThrow(new NoSuchElementException()).when(os).getServerById(zombie.getId());
+
+            for (Server server : new Server[] {zombie, survivor}) {
+                ProvisioningActivity.Id id = new ProvisioningActivity.Id(cloud.name, template.getName(), server.getName());
+                j.jenkins.addNode(new JCloudsSlave(id, server, "label", template.getEffectiveSlaveOptions()));
+            }
+        });
+
+        story.then(j -> {
+            assertNotNull(JCloudsCloud.getByName("openstack"));
+
+            long deadline = System.currentTimeMillis() + 60000;
+            while (StartupReconciliation.get().getProgress("openstack") != null) {
+                assertTrue("Startup reconciliation timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(100);
+            }
+
+            assertNull(j.jenkins.getNode("zombie"));
+            assertNotNull(j.jenkins.getNode("survivor"));
+        });
+    }
+
+    private static @Nonnull Server server(@Nonnull String name) {
+        Server server = mock(Server.class);
+        when(server.getId()).thenReturn(UUID.randomUUID().toString());
+        when(server.getName()).thenReturn(name);
+        when(server.getStatus()).thenReturn(Server.Status.ACTIVE);
+        when(server.getMetadata()).thenReturn(new HashMap<>());
+        when(server.getAddresses()).thenReturn(new NovaAddresses());
+        return server;
+    }
+
+    /**
+     * Cloud persisted with Jenkins that keeps talking to the same fake OpenStack after restart.
+     */
+    public static final class RestoredCloud extends PluginTestRule.MockJCloudsCloud {
+        public RestoredCloud(JCloudsSlaveTemplate... templates) {
+            super(templates);
+        }
+
+        @Override
+        public @Nonnull Openstack getOpenstack() {
+            return os;
+        }
+    }
+}
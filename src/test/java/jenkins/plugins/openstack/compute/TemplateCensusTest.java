@@ -0,0 +1,110 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.model.Executor;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TemplateCensusTest {
+
+    private final TemplateCensus census = new TemplateCensus();
+
+    @Test
+    public void countAvailable() {
+        JCloudsComputer idle = computer("tmplt");
+        JCloudsComputer busy = computer("tmplt");
+        JCloudsComputer other = computer("other");
+        when(busy.isIdle()).thenReturn(false);
+
+        assertEquals(1, census.getAvailable("cloud", "tmplt"));
+        assertEquals(1, census.getAvailable("cloud", "other"));
+        assertEquals(0, census.getAvailable("cloud", "missing"));
+
+        when(busy.isIdle()).thenReturn(true);
+        census.changed(busy);
+        assertEquals(2, census.getAvailable("cloud", "tmplt"));
+
+        when(idle.isPendingDelete()).thenReturn(true);
+        census.changed(idle);
+        assertEquals(1, census.getAvailable("cloud", "tmplt"));
+
+        when(other.isUserOffline()).thenReturn(true);
+        census.changed(other);
+        assertEquals(0, census.getAvailable("cloud", "other"));
+
+        when(busy.getNode()).thenReturn(null);
+        census.changed(busy);
+        assertEquals(0, census.getAvailable("cloud", "tmplt"));
+    }
+
+    @Test
+    public void evaluateOnlyChangedComputers() {
+        List<JCloudsComputer> computers = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            computers.add(computer("tmplt"));
+        }
+
+        // Every idle computer is checked against the count, as retention does
+        for (int i = 0; i < computers.size(); i++) {
+            assertEquals(1500, census.getAvailable("cloud", "tmplt"));
+        }
+
+        for (JCloudsComputer c : computers) {
+            verify(c, times(1)).isIdle();
+        }
+    }
+
+    @Test
+    public void doNotReevaluateBusyComputersUntilReported() {
+        JCloudsComputer busy = computer("tmplt");
+        when(busy.isIdle()).thenReturn(false);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, census.getAvailable("cloud", "tmplt"));
+        }
+        verify(busy, times(1)).isIdle();
+    }
+
+    @Test
+    public void reevaluateOnceExecutorFinished() throws Exception {
+        JCloudsComputer computer = computer("tmplt");
+        when(computer.isIdle()).thenReturn(false);
+        // Not stubbed again as it is called from the timer thread
+        AtomicBoolean active = new AtomicBoolean(true);
+        Executor executor = mock(Executor.class);
+        when(executor.isActive()).thenAnswer(invocation -> active.get());
+
+        census.taskCompleted(computer, executor);
+        assertEquals(0, census.getAvailable("cloud", "tmplt"));
+
+        // Still finishing the task
+        Thread.sleep(3 * TemplateCensus.IDLE_DELAY);
+        assertEquals(0, census.getAvailable("cloud", "tmplt"));
+        verify(computer, times(1)).isIdle();
+
+        when(computer.isIdle()).thenReturn(true);
+        active.set(false);
+        Thread.sleep(3 * TemplateCensus.IDLE_DELAY);
+        assertEquals(1, census.getAvailable("cloud", "tmplt"));
+    }
+
+    private JCloudsComputer computer(String template) {
+        JCloudsComputer computer = mock(JCloudsComputer.class);
+        JCloudsSlave node = mock(JCloudsSlave.class);
+        when(computer.getNode()).thenReturn(node);
+        when(node.getComputer()).thenReturn(computer);
+        when(computer.getId()).thenReturn(new ProvisioningActivity.Id("cloud", template, "node"));
+        when(computer.isIdle()).thenReturn(true);
+        census.changed(computer);
+        return computer;
+    }
+}
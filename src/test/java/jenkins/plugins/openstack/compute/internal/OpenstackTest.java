@@ -9,10 +9,12 @@ import static org.mockito.Mockito.*;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.openstack4j.api.OSClient;
 import org.openstack4j.api.compute.ComputeFloatingIPService;
+import org.openstack4j.api.compute.ServerService;
 import org.openstack4j.api.compute.ext.ZoneService;
 import org.openstack4j.api.exceptions.ClientResponseException;
 import org.openstack4j.api.image.v2.ImageService;
@@ -44,6 +46,152 @@ import java.util.Map;
 })
 public class OpenstackTest {
 
+    @Test
+    public void instanceTagIsValidNovaTag() {
+        String tag = Openstack.instanceTag("https://jenkins.example.com/ci/");
+        assertThat(tag, equalTo(Openstack.instanceTag("https://jenkins.example.com/ci/")));
+        assertThat(tag, Matchers.not(equalTo(Openstack.instanceTag("https://jenkins.example.com/other/"))));
+        assertThat(tag.length() <= 60, equalTo(true));
+        assertThat(tag.matches("[a-z0-9-]+"), equalTo(true));
+    }
+
+    @Test
+    public void listServersByTagOnceScannedFully() {
+        String fingerprint = "https://jenkins.example.com/";
+        Server ours = server("ours", fingerprint);
+        Server foreign = server("foreign", "https://other.example.com/");
+        OSClient client = mock(OSClient.class, RETURNS_DEEP_STUBS);
+        ServerService servers = client.compute().servers();
+        when(servers.list(any(Map.class))).thenReturn((List) Arrays.asList(ours, foreign));
+        Openstack os = new Openstack(client);
+
+        // Servers of ours are tagged by the full scan
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+        verify(client.compute().serverTags()).addSingle("ours", Openstack.instanceTag(fingerprint));
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(servers, times(3)).list(params.capture());
+        List<Map> calls = params.getAllValues();
+        assertThat(calls.get(0), equalTo(Collections.singletonMap("limit", "1"))); // Microversion probe
+        assertThat(calls.get(1).containsKey("tags"), equalTo(false));
+        assertThat(calls.get(2).get("tags"), equalTo(Openstack.instanceTag(fingerprint)));
+    }
+
+    @Test
+    public void listAllServersWhenTagsAreNotSupported() {
+        String fingerprint = "https://jenkins.example.com/";
+        Server ours = server("ours", fingerprint);
+        Server foreign = server("foreign", "https://other.example.com/");
+        OSClient client = mock(OSClient.class, RETURNS_DEEP_STUBS);
+        ServerService servers = client.compute().servers();
+        when(servers.list(any(Map.class))).thenAnswer((Answer<List<Server>>) invocation -> {
+            Map params = (Map) invocation.getArguments()[0];
+            if ("1".equals(params.get("limit"))) {
+                throw new ClientResponseException("Version 2.26 is not supported by the API. Minimum is 2.1 and maximum is 2.25.", 406);
+            }
+            return Arrays.asList(ours, foreign);
+        });
+        Openstack os = new Openstack(client);
+
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(servers, times(3)).list(params.capture());
+        List<Map> calls = params.getAllValues();
+        assertThat(calls.get(1).containsKey("tags"), equalTo(false));
+        assertThat(calls.get(2).containsKey("tags"), equalTo(false));
+        verify(client.compute().serverTags(), never()).addSingle(anyString(), anyString());
+    }
+
+    @Test
+    public void scanFullyAgainWhenTaggingFailed() {
+        String fingerprint = "https://jenkins.example.com/";
+        Server ours = server("ours", fingerprint);
+        OSClient client = mock(OSClient.class, RETURNS_DEEP_STUBS);
+        ServerService servers = client.compute().servers();
+        when(servers.list(any(Map.class))).thenReturn((List) Collections.singletonList(ours));
+        when(client.compute().serverTags().addSingle(anyString(), anyString())).thenThrow(
+                new ClientResponseException("Service Unavailable", 503)
+        );
+        Openstack os = new Openstack(client);
+
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+        assertThat(os.getRunningNodes(fingerprint), equalTo(Collections.singletonList(ours)));
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(servers, times(3)).list(params.capture());
+        List<Map> calls = params.getAllValues();
+        assertThat(calls.get(1).containsKey("tags"), equalTo(false));
+        assertThat(calls.get(2).containsKey("tags"), equalTo(false));
+        verify(client.compute().serverTags(), times(2)).addSingle("ours", Openstack.instanceTag(fingerprint));
+    }
+
+    @Test
+    public void listServersPageByPage() {
+        String fingerprint = "https://jenkins.example.com/";
+        List<Server> all = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            all.add(server(String.format("server-%03d", i), fingerprint));
+        }
+        // The parameters are reused for the next page so they are copied as requested
+        List<Map<String, String>> calls = new ArrayList<>();
+        OSClient client = mock(OSClient.class, RETURNS_DEEP_STUBS);
+        ServerService servers = client.compute().servers();
+        when(servers.list(any(Map.class))).thenAnswer((Answer<List<Server>>) invocation -> {
+            Map<String, String> params = new HashMap<>((Map) invocation.getArguments()[0]);
+            calls.add(params);
+            int limit = Integer.parseInt(params.get("limit"));
+            String marker = params.get("marker");
+            int from = 0;
+            if (marker != null) {
+                while (!all.get(from).getId().equals(marker)) from++;
+                from++;
+            }
+            return new ArrayList<>(all.subList(from, Math.min(from + limit, all.size())));
+        });
+        Openstack os = new Openstack(client);
+
+        assertThat(os.getRunningNodes(fingerprint), equalTo(all));
+
+        // Microversion probe and three pages, the last one short
+        assertThat(calls.size(), equalTo(4));
+        assertThat(calls.get(1).get("limit"), equalTo("100"));
+        assertThat(calls.get(1).containsKey("marker"), equalTo(false));
+        assertThat(calls.get(2).get("marker"), equalTo("server-099"));
+        assertThat(calls.get(3).get("marker"), equalTo("server-199"));
+    }
+
+    private static Server server(String id, String fingerprint) {
+        Server server = mock(Server.class);
+        when(server.getId()).thenReturn(id);
+        when(server.getName()).thenReturn(id);
+        when(server.getStatus()).thenReturn(Server.Status.ACTIVE);
+        when(server.getMetadata()).thenReturn(Collections.singletonMap(Openstack.FINGERPRINT_KEY, fingerprint));
+        return server;
+    }
+
+    @Test
+    public void serverInfoRetainsOnlyPluginMetadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(Openstack.FINGERPRINT_KEY, "https://jenkins.example.com/");
+        metadata.put("unrelated", "value");
+        Server server = mock(Server.class);
+        when(server.getId()).thenReturn("id");
+        when(server.getName()).thenReturn("name");
+        when(server.getStatus()).thenReturn(Server.Status.ACTIVE);
+        when(server.getMetadata()).thenReturn(metadata);
+
+        ServerInfo info = ServerInfo.of(server);
+        assertThat(info.getId(), equalTo("id"));
+        assertThat(info.getName(), equalTo("name"));
+        assertThat(info.getStatus(), equalTo(Server.Status.ACTIVE));
+        assertThat(info.getMetadata(), equalTo(Collections.singletonMap(Openstack.FINGERPRINT_KEY, "https://jenkins.example.com/")));
+        assertThat(info.getAccessIp(), equalTo(null));
+        assertThat(info.getCreated(), equalTo(null));
+    }
+
     @Test
     public void getImagesReturnsImagesIndexedByNameSortedByAge() {
         final Image mockImageWithNullName = mock(Image.class);
@@ -0,0 +1,51 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertNull;
+
+public class PortProbeTest {
+
+    @Test
+    public void detectOpenAndClosedPort() throws Exception {
+        PortProbe probe = new PortProbe();
+
+        InetSocketAddress address;
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            assertNull(awaitOutcome(probe, address));
+        }
+
+        String cause = awaitOutcome(probe, address);
+        assertThat(cause, not(containsString("pending")));
+    }
+
+    @Test
+    public void startOverOnceStopped() throws Exception {
+        PortProbe probe = new PortProbe();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            assertNull(awaitOutcome(probe, address));
+
+            probe.stop();
+            assertNull(awaitOutcome(probe, address));
+        } finally {
+            probe.stop();
+        }
+    }
+
+    private String awaitOutcome(PortProbe probe, InetSocketAddress address) throws InterruptedException {
+        String cause;
+        while ((cause = probe.probe(address)) != null && cause.contains("pending")) {
+            Thread.sleep(100);
+        }
+        return cause;
+    }
+}
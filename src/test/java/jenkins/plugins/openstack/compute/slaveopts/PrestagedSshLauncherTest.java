@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.slaveopts;
+
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.SCPClient;
+import com.trilead.ssh2.Session;
+import hudson.model.TaskListener;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrestagedSshLauncherTest {
+    private static final String JAR_PATH = "/opt/jenkins/agent.jar";
+
+    private final byte[] content = "agent".getBytes(StandardCharsets.UTF_8);
+    private final PrestagedSshLauncher.AgentJar jar = new PrestagedSshLauncher.AgentJar(content);
+    private final PrestagedSshLauncher launcher = new PrestagedSshLauncher(
+            "localhost", 22, "credid", null, null, JAR_PATH, 1000, null
+    );
+    private final Connection conn = mock(Connection.class);
+
+    @Test
+    public void useStagedJarWithMatchingChecksum() throws Exception {
+        Session checksum = session(0, jar.getChecksum() + "  " + JAR_PATH + "\n");
+        when(conn.openSession()).thenReturn(checksum);
+
+        launcher.ensureAgentJar(conn, TaskListener.NULL, jar);
+
+        verify(checksum).execCommand("sha256sum '" + JAR_PATH + "' 2>/dev/null");
+        verify(conn, never()).createSCPClient();
+    }
+
+    @Test
+    public void copyJarWithMismatchingChecksum() throws Exception {
+        Session checksum = session(0, "0123456789abcdef  " + JAR_PATH + "\n");
+        Session mkdir = session(0, "");
+        when(conn.openSession()).thenReturn(checksum, mkdir);
+        SCPClient scp = mock(SCPClient.class);
+        when(conn.createSCPClient()).thenReturn(scp);
+
+        launcher.ensureAgentJar(conn, TaskListener.NULL, jar);
+
+        verify(mkdir).execCommand("mkdir -p '/opt/jenkins'");
+        verify(scp).put(content, "agent.jar", "/opt/jenkins", "0644");
+    }
+
+    @Test
+    public void copyMissingJar() throws Exception {
+        when(conn.openSession()).thenReturn(session(1, ""), session(0, ""));
+        SCPClient scp = mock(SCPClient.class);
+        when(conn.createSCPClient()).thenReturn(scp);
+
+        launcher.ensureAgentJar(conn, TaskListener.NULL, jar);
+
+        verify(scp).put(content, "agent.jar", "/opt/jenkins", "0644");
+    }
+
+    @Test
+    public void failCopyingJar() throws Exception {
+        when(conn.openSession()).thenReturn(session(1, ""), session(0, ""));
+        SCPClient scp = mock(SCPClient.class);
+        when(conn.createSCPClient()).thenReturn(scp);
+        doThrow(new IOException("Permission denied")).when(scp).put(any(byte[].class), anyString(), anyString(), anyString());
+
+        try {
+            launcher.ensureAgentJar(conn, TaskListener.NULL, jar);
+            fail();
+        } catch (IOException ex) {
+            assertEquals("Permission denied", ex.getMessage());
+        }
+    }
+
+    private static Session session(int status, String stdout) {
+        Session session = mock(Session.class);
+        when(session.getStdout()).thenReturn(new ByteArrayInputStream(stdout.getBytes(StandardCharsets.UTF_8)));
+        when(session.getExitStatus()).thenReturn(status);
+        return session;
+    }
+}
@@ -10,13 +10,21 @@ import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.*;
+import org.mockito.stubbing.Answer;
+import org.openstack4j.api.exceptions.ClientResponseException;
 import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.compute.builder.ServerCreateBuilder;
 
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
 
 public class OpenstackMachineStepTest {
 
@@ -66,6 +74,60 @@ public class OpenstackMachineStepTest {
         assertThat(ServerScope.extract(nodes.get(0)), instanceOf(ServerScope.Unlimited.class));
     }
 
+    @Test
+    public void bootMultiple() throws Exception {
+
+        WorkflowJob bootMultiple = j.jenkins.createProject(WorkflowJob.class, "bootMultiple");
+        bootMultiple.setDefinition(new CpsFlowDefinition(
+                "def srvs = openstackMachine cloud: 'openstack', template: 'template0', count: 3 \n" +
+                        "assert srvs.size() == 3 \n" +
+                        "for (def srv : srvs) { echo \"Instance IP: ${srv.address}\" } \n" +
+                        "for (def srv : srvs) { srv.destroy() } \n", true));
+        WorkflowRun b = j.assertBuildStatusSuccess(bootMultiple.scheduleBuild2(0));
+        j.assertLogContains("Instance IP: 42.42.42", b);
+
+        assertThat(openstack.getRunningNodes(), emptyIterable());
+    }
+
+    @Test
+    public void bootFailure() throws Exception {
+        Server broken = j.mockServer().name("broken").status(Server.Status.ERROR).get();
+        when(openstack.boot(any(ServerCreateBuilder.class))).thenReturn(broken);
+        when(openstack.getServerById(broken.getId())).thenReturn(broken);
+
+        WorkflowJob bootFailure = j.jenkins.createProject(WorkflowJob.class, "bootFailure");
+        bootFailure.setDefinition(new CpsFlowDefinition(
+                " def srv = openstackMachine cloud: 'openstack', template: 'template0' \n" +
+                        " echo 'shouldnt reach' " , true));
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, bootFailure.scheduleBuild2(0));
+        j.assertLogNotContains("shouldnt reach", b);
+        j.assertLogContains("Failed to boot server broken", b);
+    }
+
+    @Test
+    public void bootSurvivingTransientFailure() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        when(openstack.getServerById(any(String.class))).thenAnswer((Answer<Server>) invocation -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new ClientResponseException("Service Unavailable", 503);
+            }
+            String id = (String) invocation.getArguments()[0];
+            for (Server server : openstack.getRunningNodes()) {
+                if (id.equals(server.getId())) return server;
+            }
+            throw new NoSuchElementException(id);
+        });
+
+        WorkflowJob bootTransient = j.jenkins.createProject(WorkflowJob.class, "bootTransient");
+        bootTransient.setDefinition(new CpsFlowDefinition(
+                "def srv = openstackMachine cloud: 'openstack', template: 'template0' \n" +
+                        "echo \"Instance IP: ${srv.address}\" \n" +
+                        "srv.destroy()", true));
+        WorkflowRun b = j.assertBuildStatusSuccess(bootTransient.scheduleBuild2(0));
+        j.assertLogContains("Instance IP: 42.42.42", b);
+        assertTrue(failed.get());
+    }
+
     @Test
     public void bootInvalidScope() throws Exception {
 